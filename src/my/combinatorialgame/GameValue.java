@@ -24,26 +24,54 @@
 
 package my.combinatorialgame;
 
+import java.math.BigInteger;
+
 /**
- * GameValue is a class which holds information about a rational, finite
- * value for a solved combinatorial game. It is used to keep track of rational 
- * numbers, and simplify them as necessary.
+ * GameValue is a class which holds information about a finite dyadic value 
+ * for a solved combinatorial game, that is a number whose denominator is a 
+ * power of two, as is the value of every Red-Blue Hackenbush game. 
+ * 
+ * A value is kept as a numerator and the exponent of its denominator, and is
+ * always in lowest terms. The numerator is held in a long whenever it fits, 
+ * so that values are added and compared with shifts and no allocation; only
+ * when it does not fit is it moved to a BigInteger, which keeps every value
+ * exact however tall the game gets.
  * @author Madeleine Bulkow
  */
-public class GameValue {
-    private long num;
-    private long den;
+public class GameValue implements Comparable<GameValue> {
+    private static final BigInteger LONG_MIN = 
+            BigInteger.valueOf(Long.MIN_VALUE);
+    private static final BigInteger LONG_MAX = 
+            BigInteger.valueOf(Long.MAX_VALUE);
+    
+    long num;
+    BigInteger bigNum;
+    int exp;
     
     /**
      * Initializes the GameValue object with the appropriate numerator
      * and denominator. 
      * @param num     the numerator of the game value
-     * @param den     the denominator of the game value
+     * @param den     the denominator of the game value, a positive or negative
+     * power of two
      */
     public GameValue(long num, long den){
-        this.num = num;
-        this.den = den;
-        simplify();
+        set(num, den);
+    }
+    
+    /**
+     * Initializes the GameValue object with a numerator and the exponent of
+     * its denominator.
+     * @param num     the numerator of the game value
+     * @param exp     a nonnegative integer, the denominator being two raised
+     * to this power
+     */
+    public GameValue(BigInteger num, int exp){
+        if(exp < 0){
+            throw new IllegalArgumentException(
+                    "Exponents must be nonnegative.");
+        }
+        setBig(num, exp);
     }
     
     /**
@@ -52,38 +80,92 @@ public class GameValue {
      * @param games     an array of GameValue objects
      */
     public GameValue(Iterable<GameValue> games){
-        num = 0;
-        den = 1;
+        ValueAccumulator sum = new ValueAccumulator();
         for(GameValue game: games){
-            num = num * game.den + game.num * den;
-            den *= game.den;
-            simplify();
+            sum.add(game);
         }
+        sum.writeTo(this);
+    }
+    
+    /**
+     * Creates an empty GameValue, to be filled in by its caller.
+     */
+    private GameValue(){
     }
     
     /**
      * Returns the denominator of the current GameValue.
      * @return A positive integer, the denominator.
+     * @throws ArithmeticException If the denominator does not fit in a long.
      */
     public long getDen(){
-        return den;
+        if(exp >= 63){
+            throw new ArithmeticException("Denominator overflows a long.");
+        }
+        return 1L << exp;
     }
     
     /**
      * Returns the numerator of the current GameValue.
      * @return An integer, the numerator.
+     * @throws ArithmeticException If the numerator does not fit in a long.
      */
     public long getNum(){
+        if(bigNum != null){
+            throw new ArithmeticException("Numerator overflows a long.");
+        }
         return num;
     }
     
+    /**
+     * Returns the numerator of the current GameValue, however large.
+     * @return An integer, the numerator.
+     */
+    public BigInteger getBigNum(){
+        return bigNum != null ? bigNum : BigInteger.valueOf(num);
+    }
+    
+    /**
+     * Returns the power of two in the denominator of the current GameValue.
+     * @return A nonnegative integer, the exponent of the denominator.
+     */
+    public int getExponent(){
+        return exp;
+    }
+    
+    /**
+     * Returns whether getNum and getDen can both be called.
+     * @return True if the numerator and denominator both fit in a long.
+     */
+    public boolean fitsInLong(){
+        return bigNum == null && exp < 63;
+    }
+    
+    /**
+     * Returns the sign of the current GameValue.
+     * @return -1, 0 or 1 as the value is negative, zero or positive.
+     */
+    public int signum(){
+        return bigNum != null ? bigNum.signum() : Long.signum(num);
+    }
+    
     /**
      * Simplifies the fraction numerator/denominator contained in GameValue.
+     * Values are always kept in lowest terms, so this only strips any common
+     * factors of two left over.
      */
     public final void simplify(){
-        long gcd = gcd(Math.abs(num), den);
-        num /= gcd;
-        den /= gcd;
+        if(bigNum != null){
+            setBig(bigNum, exp);
+            return;
+        }
+        if(num == 0){
+            exp = 0;
+            return;
+        }
+        int shift = Math.min(Long.numberOfTrailingZeros(num), exp);
+        num >>= shift;
+        exp -= shift;
     }
     
     /**
@@ -109,28 +191,190 @@ public class GameValue {
     /**
      * Updates the current GameValue object to reflect a new value. Simplifies
      * the fraction if necessary.
-     * @param num 
-     * @param den 
+     * @param num the new numerator
+     * @param den the new denominator, a positive or negative power of two
      */
     public void update(long num, long den){
-        if(den > 0){
-            this.num = num;
-            this.den = den;
+        set(num, den);
+    }
+    
+    /**
+     * Adds another GameValue to this one, leaving both unchanged.
+     * @param other Another GameValue.
+     * @return A new GameValue holding the sum.
+     */
+    public GameValue add(GameValue other){
+        GameValue sum = copy();
+        sum.addInPlace(other);
+        return sum;
+    }
+    
+    /**
+     * Adds an integer to this GameValue, leaving it unchanged.
+     * @param n Any long.
+     * @return A new GameValue holding the sum.
+     */
+    public GameValue add(long n){
+        GameValue sum = copy();
+        if(bigNum == null && exp < 63){
+            long shifted = shiftLeft(n, exp);
+            if(shifted != Long.MIN_VALUE || n == 0){
+                long total = sum.num + shifted;
+                if(((sum.num ^ total) & (shifted ^ total)) >= 0){
+                    sum.num = total;
+                    return sum;
+                }
+            }
         }
-        else if(den < 0){
-            this.num = -num;
-            this.den = -den;
+        sum.setBig(getBigNum().add(BigInteger.valueOf(n).shiftLeft(exp)), 
+                exp);
+        return sum;
+    }
+    
+    /**
+     * Divides this GameValue by a power of two, leaving it unchanged.
+     * @param times A nonnegative integer, the number of halvings.
+     * @return A new GameValue holding the quotient.
+     */
+    public GameValue halve(int times){
+        if(times < 0){
+            throw new IllegalArgumentException(
+                    "Cannot halve a negative number of times.");
         }
-        else{
-            this.num = Integer.MAX_VALUE;
-            if(num > 0){
-                this.den = 1;
+        GameValue half = copy();
+        if(half.signum() != 0){
+            half.exp = Math.addExact(exp, times);
+            half.simplify();
+        }
+        return half;
+    }
+    
+    /**
+     * Finds the greatest integer no greater than this GameValue.
+     * @return The floor of the value.
+     * @throws ArithmeticException If the floor does not fit in a long.
+     */
+    public long floor(){
+        if(bigNum == null){
+            return exp >= 63 ? (num < 0 ? -1 : 0) : num >> exp;
+        }
+        return bigNum.shiftRight(exp).longValueExact();
+    }
+    
+    /**
+     * Finds the least integer no less than this GameValue.
+     * @return The ceiling of the value.
+     * @throws ArithmeticException If the ceiling does not fit in a long.
+     */
+    public long ceil(){
+        if(bigNum == null){
+            if(exp >= 63){
+                return num > 0 ? 1 : 0;
+            }
+            return -((-num) >> exp);
+        }
+        return bigNum.negate().shiftRight(exp).negate().longValueExact();
+    }
+    
+    /**
+     * Compares this GameValue with another, as numbers.
+     * @param other Another GameValue.
+     * @return A negative integer, zero, or a positive integer as this value is
+     * less than, equal to, or greater than the other.
+     */
+    @Override
+    public int compareTo(GameValue other){
+        int sign = signum();
+        int otherSign = other.signum();
+        if(sign != otherSign){
+            return Integer.compare(sign, otherSign);
+        }
+        if(bigNum == null && other.bigNum == null){
+            if(exp == other.exp){
+                return Long.compare(num, other.num);
+            }
+            int shift = Math.abs(exp - other.exp);
+            if(exp < other.exp){
+                long scaled = shiftLeft(num, shift);
+                if(scaled != Long.MIN_VALUE){
+                    return Long.compare(scaled, other.num);
+                }
             }
             else{
-                this.den = -1;
+                long scaled = shiftLeft(other.num, shift);
+                if(scaled != Long.MIN_VALUE){
+                    return Long.compare(num, scaled);
+                }
+            }
+        }
+        int common = Math.max(exp, other.exp);
+        return getBigNum().shiftLeft(common - exp).compareTo(
+                other.getBigNum().shiftLeft(common - other.exp));
+    }
+    
+    @Override
+    public boolean equals(Object other){
+        if(!(other instanceof GameValue)){
+            return false;
+        }
+        GameValue value = (GameValue) other;
+        if(exp != value.exp){
+            return false;
+        }
+        if(bigNum != null || value.bigNum != null){
+            return bigNum != null && bigNum.equals(value.bigNum);
+        }
+        return num == value.num;
+    }
+    
+    @Override
+    public int hashCode(){
+        int hash = bigNum != null ? bigNum.hashCode() : Long.hashCode(num);
+        return hash * 31 + exp;
+    }
+    
+    /**
+     * Finds the simplest number strictly between two values, which is the 
+     * value of a game whose options are all numbers, with left the best
+     * value among Left's options and right the best among Right's.
+     * @param left The greatest value of Left's options, or null if Left has
+     * no moves.
+     * @param right The least value of Right's options, or null if Right has
+     * no moves.
+     * @return A new GameValue, the simplest number between left and right.
+     */
+    public static GameValue simplestBetween(GameValue left, GameValue right){
+        if(left != null && right != null && left.compareTo(right) >= 0){
+            throw new IllegalArgumentException(
+                    "Left options must be less than Right options.");
+        }
+        boolean aboveZero = left != null && left.signum() >= 0;
+        boolean belowZero = right != null && right.signum() <= 0;
+        if(!aboveZero && !belowZero){
+            return new GameValue(0, 1);
+        }
+        if(aboveZero){
+            GameValue n = left.scaledFloor(0).add(1);
+            if(right == null || n.compareTo(right) < 0){
+                return n;
+            }
+            for(int times = 1; ; times++){
+                GameValue m = left.scaledFloor(times).add(1).halve(times);
+                if(m.compareTo(right) < 0){
+                    return m;
+                }
+            }
+        }
+        GameValue n = right.scaledCeil(0).add(-1);
+        if(left == null || n.compareTo(left) > 0){
+            return n;
+        }
+        for(int times = 1; ; times++){
+            GameValue m = right.scaledCeil(times).add(-1).halve(times);
+            if(m.compareTo(left) > 0){
+                return m;
             }
         }
-        simplify();
     }
     
     /**
@@ -138,7 +382,194 @@ public class GameValue {
      * @return      A string containing "numerator/denominator".
      */
     public String printValue(){
-        return Long.toString(num) + "/" + Long.toString(den);
+        if(fitsInLong()){
+            return Long.toString(num) + "/" + Long.toString(1L << exp);
+        }
+        return getBigNum().toString() + "/" 
+                + BigInteger.ONE.shiftLeft(exp).toString();
+    }
+    
+    /**
+     * Adds another GameValue to this one, changing this one.
+     * @param other Another GameValue.
+     */
+    private void addInPlace(GameValue other){
+        if(bigNum == null && other.bigNum == null){
+            int common = Math.max(exp, other.exp);
+            long a = shiftLeft(num, common - exp);
+            long b = shiftLeft(other.num, common - other.exp);
+            if((a != Long.MIN_VALUE || num == 0) 
+                    && (b != Long.MIN_VALUE || other.num == 0)){
+                long total = a + b;
+                if(((a ^ total) & (b ^ total)) >= 0){
+                    num = total;
+                    exp = common;
+                    simplify();
+                    return;
+                }
+            }
+        }
+        int common = Math.max(exp, other.exp);
+        setBig(getBigNum().shiftLeft(common - exp).add(
+                other.getBigNum().shiftLeft(common - other.exp)), common);
     }
     
+    /**
+     * Finds the floor of this GameValue multiplied by a power of two.
+     * @param times A nonnegative integer, the number of doublings.
+     * @return A new GameValue holding an integer.
+     */
+    private GameValue scaledFloor(int times){
+        if(times >= exp){
+            return scaled(times - exp);
+        }
+        GameValue floor = new GameValue();
+        if(bigNum == null){
+            int shift = exp - times;
+            floor.num = shift >= 64 ? (num < 0 ? -1 : 0) : num >> shift;
+            return floor;
+        }
+        floor.setBig(bigNum.shiftRight(exp - times), 0);
+        return floor;
+    }
+    
+    /**
+     * Finds the ceiling of this GameValue multiplied by a power of two.
+     * @param times A nonnegative integer, the number of doublings.
+     * @return A new GameValue holding an integer.
+     */
+    private GameValue scaledCeil(int times){
+        GameValue ceil = negate().scaledFloor(times);
+        return ceil.negate();
+    }
+    
+    /**
+     * Multiplies the numerator of this GameValue by a power of two, dropping
+     * the denominator.
+     * @param shift A nonnegative integer.
+     * @return A new GameValue holding an integer.
+     */
+    private GameValue scaled(int shift){
+        GameValue value = new GameValue();
+        if(bigNum == null){
+            long shifted = shiftLeft(num, shift);
+            if(shifted != Long.MIN_VALUE){
+                value.num = shifted;
+                return value;
+            }
+        }
+        value.setBig(getBigNum().shiftLeft(shift), 0);
+        return value;
+    }
+    
+    /**
+     * Returns the negation of this GameValue.
+     * @return A new GameValue with the opposite sign.
+     */
+    public GameValue negate(){
+        GameValue value = copy();
+        if(bigNum != null || num == Long.MIN_VALUE){
+            value.setBig(getBigNum().negate(), exp);
+        }
+        else{
+            value.num = -num;
+        }
+        return value;
+    }
+    
+    /**
+     * Returns a copy of this GameValue.
+     * @return A new GameValue with the same value.
+     */
+    private GameValue copy(){
+        GameValue value = new GameValue();
+        value.num = num;
+        value.bigNum = bigNum;
+        value.exp = exp;
+        return value;
+    }
+    
+    /**
+     * Sets this GameValue from a numerator and a power of two denominator.
+     * @param num Any long.
+     * @param den A nonzero power of two, possibly negative.
+     */
+    private void set(long num, long den){
+        if(den == 0){
+            throw new ArithmeticException("Denominator is zero.");
+        }
+        long magnitude = Math.abs(den);
+        if(magnitude != Long.lowestOneBit(magnitude)){
+            throw new IllegalArgumentException(
+                    "Denominators must be powers of two.");
+        }
+        this.exp = Long.numberOfTrailingZeros(den);
+        this.bigNum = null;
+        if(den < 0){
+            if(num == Long.MIN_VALUE){
+                setBig(BigInteger.valueOf(num).negate(), exp);
+                return;
+            }
+            num = -num;
+        }
+        this.num = num;
+        simplify();
+    }
+    
+    /**
+     * Sets this GameValue from a numerator and the exponent of a power of two
+     * denominator.
+     * @param num Any long.
+     * @param exp A nonnegative integer.
+     */
+    void setLong(long num, int exp){
+        this.num = num;
+        this.bigNum = null;
+        this.exp = exp;
+        simplify();
+    }
+    
+    /**
+     * Sets this GameValue from a numerator and the exponent of a power of two
+     * denominator, moving the numerator into a long if it fits.
+     * @param num Any integer.
+     * @param exp A nonnegative integer.
+     */
+    void setBig(BigInteger num, int exp){
+        if(num.signum() == 0){
+            this.num = 0;
+            this.bigNum = null;
+            this.exp = 0;
+            return;
+        }
+        int shift = Math.min(num.getLowestSetBit(), exp);
+        num = num.shiftRight(shift);
+        this.exp = exp - shift;
+        if(num.compareTo(LONG_MIN) >= 0 && num.compareTo(LONG_MAX) <= 0){
+            this.num = num.longValue();
+            this.bigNum = null;
+        }
+        else{
+            this.num = 0;
+            this.bigNum = num;
+        }
+    }
+    
+    /**
+     * Shifts a long left, reporting overflow.
+     * @param n Any long.
+     * @param shift A nonnegative integer.
+     * @return n times two to the power shift, or Long.MIN_VALUE if that does 
+     * not fit in a long.
+     */
+    static long shiftLeft(long n, int shift){
+        if(shift == 0 || n == 0){
+            return n;
+        }
+        if(shift >= 63 || n == Long.MIN_VALUE){
+            return Long.MIN_VALUE;
+        }
+        long shifted = n << shift;
+        return (shifted >> shift) == n ? shifted : Long.MIN_VALUE;
+    }
 }
@@ -0,0 +1,77 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.combinatorialgame;
+
+/**
+ * Outcome is the outcome class of a game: who wins it with perfect play, 
+ * given who moves first. Left is the positive player, Blue in Red-Blue 
+ * Hackenbush, and Right the negative one.
+ * @author Madeleine Bulkow
+ */
+public enum Outcome {
+    
+    /**
+     * Left wins whoever moves first. Positive numbers are in this class.
+     */
+    LEFT,
+    
+    /**
+     * Right wins whoever moves first. Negative numbers are in this class.
+     */
+    RIGHT,
+    
+    /**
+     * Whoever moves first wins. No number is in this class.
+     */
+    FIRST,
+    
+    /**
+     * Whoever moves second wins. Zero is the only number in this class.
+     */
+    SECOND;
+    
+    /**
+     * Finds the outcome class from who wins when each player moves first.
+     * @param leftFirstWins Whether Left wins moving first.
+     * @param rightFirstWins Whether Right wins moving first.
+     * @return The outcome class.
+     */
+    public static Outcome of(boolean leftFirstWins, boolean rightFirstWins){
+        if(leftFirstWins){
+            return rightFirstWins ? FIRST : LEFT;
+        }
+        return rightFirstWins ? RIGHT : SECOND;
+    }
+    
+    /**
+     * Finds the outcome class of a number from its sign.
+     * @param value A GameValue.
+     * @return LEFT, RIGHT or SECOND.
+     */
+    public static Outcome of(GameValue value){
+        int sign = value.signum();
+        return sign > 0 ? LEFT : sign < 0 ? RIGHT : SECOND;
+    }
+}
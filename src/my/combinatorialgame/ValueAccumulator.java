@@ -0,0 +1,264 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.combinatorialgame;
+
+import java.math.BigInteger;
+
+/**
+ * ValueAccumulator is a running sum of GameValues which is changed in place,
+ * so that any number of values can be added up without building a list or 
+ * making a GameValue for each partial sum. Like GameValue it holds a 
+ * numerator over a power of two, in a long until that would overflow and in a
+ * BigInteger after, but it does not bring the sum to lowest terms until a 
+ * GameValue is asked for.
+ * @author Madeleine Bulkow
+ */
+public class ValueAccumulator {
+    private long num;
+    private BigInteger bigNum;
+    private int exp;
+    
+    /**
+     * Constructor, starting from a sum of zero.
+     */
+    public ValueAccumulator(){
+    }
+    
+    /**
+     * Sets the sum back to zero.
+     * @return This accumulator.
+     */
+    public ValueAccumulator reset(){
+        num = 0;
+        bigNum = null;
+        exp = 0;
+        return this;
+    }
+    
+    /**
+     * Adds a GameValue to the sum.
+     * @param value Any GameValue.
+     * @return This accumulator.
+     */
+    public ValueAccumulator add(GameValue value){
+        if(value.bigNum == null){
+            return add(value.num, value.exp);
+        }
+        addBig(value.bigNum, value.exp);
+        return this;
+    }
+    
+    /**
+     * Adds an integer to the sum.
+     * @param n Any long.
+     * @return This accumulator.
+     */
+    public ValueAccumulator add(long n){
+        return add(n, 0);
+    }
+    
+    /**
+     * Divides the sum by a power of two.
+     * @param times A nonnegative integer, the number of halvings.
+     * @return This accumulator.
+     */
+    public ValueAccumulator halve(int times){
+        if(times < 0){
+            throw new IllegalArgumentException(
+                    "Cannot halve a negative number of times.");
+        }
+        exp = Math.addExact(exp, times);
+        return this;
+    }
+    
+    /**
+     * Returns the sign of the sum.
+     * @return -1, 0 or 1 as the sum is negative, zero or positive.
+     */
+    public int signum(){
+        return bigNum != null ? bigNum.signum() : Long.signum(num);
+    }
+    
+    /**
+     * Finds the greatest integer no greater than the sum.
+     * @return The floor of the sum.
+     * @throws ArithmeticException If the floor does not fit in a long.
+     */
+    public long floor(){
+        if(bigNum == null){
+            return exp >= 64 ? (num < 0 ? -1 : 0) : num >> exp;
+        }
+        return bigNum.shiftRight(exp).longValueExact();
+    }
+    
+    /**
+     * Finds the least integer no less than the sum.
+     * @return The ceiling of the sum.
+     * @throws ArithmeticException If the ceiling does not fit in a long.
+     */
+    public long ceil(){
+        if(bigNum == null && num != Long.MIN_VALUE){
+            return exp >= 64 ? (num > 0 ? 1 : 0) : -((-num) >> exp);
+        }
+        return getBigNum().negate().shiftRight(exp).negate()
+                .longValueExact();
+    }
+    
+    /**
+     * Brings the sum to lowest terms, moving the numerator back into a long
+     * if it now fits.
+     * @return This accumulator.
+     */
+    public ValueAccumulator simplify(){
+        if(bigNum != null){
+            GameValue value = toGameValue();
+            num = value.num;
+            bigNum = value.bigNum;
+            exp = value.exp;
+        }
+        else if(num == 0){
+            exp = 0;
+        }
+        else{
+            int shift = Math.min(Long.numberOfTrailingZeros(num), exp);
+            num >>= shift;
+            exp -= shift;
+        }
+        return this;
+    }
+    
+    /**
+     * Returns whether the numerator of the sum is held in a long.
+     * @return True if getNum can be called.
+     */
+    public boolean fitsInLong(){
+        return bigNum == null;
+    }
+    
+    /**
+     * Returns the numerator of the sum, over two to the power getExponent.
+     * The sum is not brought to lowest terms first.
+     * @return An integer, the numerator.
+     * @throws ArithmeticException If the numerator does not fit in a long.
+     */
+    public long getNum(){
+        if(bigNum != null){
+            throw new ArithmeticException("Numerator overflows a long.");
+        }
+        return num;
+    }
+    
+    /**
+     * Returns the numerator of the sum, however large.
+     * @return An integer, the numerator.
+     */
+    public BigInteger getBigNum(){
+        return bigNum != null ? bigNum : BigInteger.valueOf(num);
+    }
+    
+    /**
+     * Returns the power of two in the denominator of the sum.
+     * @return A nonnegative integer.
+     */
+    public int getExponent(){
+        return exp;
+    }
+    
+    /**
+     * Makes a GameValue holding the sum, in lowest terms. The accumulator is
+     * left unchanged.
+     * @return A new GameValue.
+     */
+    public GameValue toGameValue(){
+        GameValue value = new GameValue(0, 1);
+        writeTo(value);
+        return value;
+    }
+    
+    /**
+     * Overwrites a GameValue with the sum, in lowest terms.
+     * @param value The GameValue to overwrite.
+     */
+    void writeTo(GameValue value){
+        if(bigNum == null){
+            value.setLong(num, exp);
+        }
+        else{
+            value.setBig(bigNum, exp);
+        }
+    }
+    
+    /**
+     * Adds a numerator over a power of two to the sum.
+     * @param n Any long.
+     * @param e A nonnegative integer, the exponent of the denominator.
+     * @return This accumulator.
+     */
+    public ValueAccumulator add(long n, int e){
+        if(n == 0){
+            return this;
+        }
+        if(bigNum == null){
+            long a = GameValue.shiftLeft(num, Math.max(e - exp, 0));
+            long b = GameValue.shiftLeft(n, Math.max(exp - e, 0));
+            if(a != Long.MIN_VALUE && b != Long.MIN_VALUE){
+                long total = a + b;
+                if(((a ^ total) & (b ^ total)) >= 0){
+                    num = total;
+                    exp = Math.max(exp, e);
+                    return this;
+                }
+            }
+        }
+        addBig(BigInteger.valueOf(n), e);
+        return this;
+    }
+    
+    /**
+     * Adds a numerator over a power of two to the sum.
+     * @param n Any integer.
+     * @param e A nonnegative integer, the exponent of the denominator.
+     * @return This accumulator.
+     */
+    public ValueAccumulator add(BigInteger n, int e){
+        if(n.signum() != 0){
+            addBig(n, e);
+        }
+        return this;
+    }
+    
+    /**
+     * Adds a numerator over a power of two to the sum, using BigIntegers.
+     * @param n Any integer.
+     * @param e A nonnegative integer, the exponent of the denominator.
+     */
+    private void addBig(BigInteger n, int e){
+        int common = Math.max(exp, e);
+        bigNum = getBigNum().shiftLeft(common - exp).add(
+                n.shiftLeft(common - e));
+        num = 0;
+        exp = common;
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.hackenbush;
+
+import java.util.Arrays;
+
+/**
+ * CanonicalForm renumbers the vertices of a Hackenbush position so that 
+ * positions differing only in how their vertices are numbered end up with the
+ * same sticks between the same vertices, and so with the same position hash.
+ * The ground always stays vertex 0, and vertices not connected to the ground
+ * are dropped.
+ * 
+ * Vertices are first told apart by color refinement: each vertex is 
+ * repeatedly classed by its own class and the classes, red sticks and blue
+ * sticks of its neighbours, until the classes stop splitting. While some class
+ * still holds several vertices, one of them is singled out and refinement is 
+ * run again. Classes are ordered by hashes of what they contain rather than by
+ * vertex numbers, so the result is the same for every numbering whenever the
+ * vertices singled out could be swapped by a symmetry of the graph, which is
+ * the usual case. When it is not, isomorphic positions may get different
+ * forms, but no two different positions ever share one.
+ * @author Madeleine Bulkow
+ */
+public class CanonicalForm {
+    
+    private final Hackenbush position;
+    private final int[] labels;
+    
+    /**
+     * Constructor
+     * 
+     * @param edges The edges of a position, with vertex 0 as the ground.
+     */
+    public CanonicalForm(EdgeStore edges){
+        int size = edges.getSize();
+        labels = new int[size];
+        Arrays.fill(labels, -1);
+        if(size == 0){
+            position = new Hackenbush(new SparseEdgeStore(0));
+            return;
+        }
+        int[] heights = HeightLayers.findHeights(edges, 0);
+        int[] nodes = new int[size];
+        int count = 0;
+        for(int i = 0; i < size; i++){
+            if(heights[i] <= size){
+                nodes[count++] = i;
+            }
+        }
+        nodes = Arrays.copyOf(nodes, count);
+        
+        // Start from the loops at each vertex, with the ground in a class of 
+        // its own, and refine until every vertex has a class to itself.
+        long[] signature = new long[size];
+        for(int node: nodes){
+            signature[node] = mix(mix(edges.getEdges('r', node, node)) 
+                    ^ edges.getEdges('b', node, node));
+        }
+        int[] rank = new int[size];
+        int classes = rankSignatures(nodes, signature, rank);
+        classes = refine(edges, nodes, signature, rank, classes);
+        int[] classSize = new int[size];
+        while(classes < count){
+            Arrays.fill(classSize, 0);
+            for(int node: nodes){
+                classSize[rank[node]]++;
+            }
+            int target = -1;
+            int chosen = -1;
+            for(int node: nodes){
+                if(classSize[rank[node]] > 1 
+                        && (target == -1 || rank[node] < target)){
+                    target = rank[node];
+                    chosen = node;
+                }
+            }
+            for(int node: nodes){
+                if(rank[node] == target && node != chosen){
+                    rank[node] = target + 1;
+                }
+            }
+            classes = refine(edges, nodes, signature, rank, classes + 1);
+        }
+        
+        for(int node: nodes){
+            labels[node] = rank[node];
+        }
+        SparseEdgeStore canonical = new SparseEdgeStore(count);
+        for(int node: nodes){
+            int degree = edges.getDegree(node);
+            for(int slot = 0; slot < degree; slot++){
+                int neighbor = edges.getNeighbor(node, slot);
+                if(labels[neighbor] < labels[node]){
+                    continue;
+                }
+                canonical.addEdges('r', labels[node], labels[neighbor], 
+                        edges.getEdgesAt('r', node, slot));
+                canonical.addEdges('b', labels[node], labels[neighbor], 
+                        edges.getEdgesAt('b', node, slot));
+            }
+        }
+        position = new Hackenbush(canonical);
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param hackenbush A Hackenbush game. It is not changed.
+     */
+    public CanonicalForm(Hackenbush hackenbush){
+        this(hackenbush.edges);
+    }
+    
+    /**
+     * Returns the renumbered position. It is shared, so it should be copied
+     * before any moves are made on it.
+     * @return A Hackenbush game in canonical form.
+     */
+    public Hackenbush getPosition(){
+        return position;
+    }
+    
+    /**
+     * Returns the position hash of the canonical form, which is the same for
+     * positions differing only in their numbering.
+     * @return A 64-bit hash.
+     */
+    public long getHash(){
+        return position.getPositionHash();
+    }
+    
+    /**
+     * Returns the second position hash of the canonical form.
+     * @return A 64-bit hash, independent of getHash.
+     */
+    public long getCheck(){
+        return position.getPositionCheck();
+    }
+    
+    /**
+     * Returns the number a vertex of the original position was given in the
+     * canonical form.
+     * @param node An integer between 0 and (size - 1) inclusive.
+     * @return The new number of the vertex, or -1 if it was dropped.
+     */
+    public int getLabel(int node){
+        return labels[node];
+    }
+    
+    /**
+     * Splits classes by the classes and sticks of their neighbours until no
+     * class splits any further.
+     * @param edges The edges of the position.
+     * @param nodes The vertices connected to the ground.
+     * @param signature Scratch space for the signature of each vertex.
+     * @param rank The class of each vertex, updated in place.
+     * @param classes The number of classes in rank.
+     * @return The number of classes after refinement.
+     */
+    private static int refine(EdgeStore edges, int[] nodes, long[] signature,
+            int[] rank, int classes){
+        long[] codes = new long[0];
+        while(true){
+            for(int node: nodes){
+                int degree = edges.getDegree(node);
+                if(codes.length < degree){
+                    codes = new long[degree];
+                }
+                int k = 0;
+                for(int slot = 0; slot < degree; slot++){
+                    int red = edges.getEdgesAt('r', node, slot);
+                    int blue = edges.getEdgesAt('b', node, slot);
+                    if(red + blue > 0){
+                        int neighbor = edges.getNeighbor(node, slot);
+                        codes[k++] = mix(mix(mix(rank[neighbor]) ^ red) 
+                                ^ blue);
+                    }
+                }
+                Arrays.sort(codes, 0, k);
+                long hash = mix(rank[node]);
+                for(int q = 0; q < k; q++){
+                    hash = mix(hash ^ codes[q]);
+                }
+                signature[node] = hash;
+            }
+            int refined = rankSignatures(nodes, signature, rank);
+            if(refined == classes){
+                return refined;
+            }
+            classes = refined;
+        }
+    }
+    
+    /**
+     * Replaces the class of each vertex by the position of its signature in
+     * sorted order, keeping the ground first.
+     * @param nodes The vertices connected to the ground.
+     * @param signature The signature of each vertex.
+     * @param rank The class of each vertex, overwritten.
+     * @return The number of distinct classes.
+     */
+    private static int rankSignatures(int[] nodes, long[] signature, 
+            int[] rank){
+        signature[0] = Long.MIN_VALUE;
+        long[] sorted = new long[nodes.length];
+        for(int k = 0; k < nodes.length; k++){
+            sorted[k] = signature[nodes[k]];
+        }
+        Arrays.sort(sorted);
+        int classes = 0;
+        for(int k = 0; k < sorted.length; k++){
+            if(k == 0 || sorted[k] != sorted[k - 1]){
+                classes++;
+            }
+        }
+        for(int node: nodes){
+            int r = Arrays.binarySearch(sorted, signature[node]);
+            while(r > 0 && sorted[r - 1] == signature[node]){
+                r--;
+            }
+            rank[node] = r;
+        }
+        return classes;
+    }
+    
+    /**
+     * Scrambles the bits of a 64-bit integer, using the finalizer of the
+     * SplitMix64 generator.
+     * @param z Any long.
+     * @return The scrambled long.
+     */
+    private static long mix(long z){
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
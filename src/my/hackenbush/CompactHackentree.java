@@ -0,0 +1,577 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.hackenbush;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import my.combinatorialgame.GameValue;
+import my.combinatorialgame.ValueAccumulator;
+
+/**
+ * CompactHackentree holds a Red-Blue Hackenbush tree in primitive arrays
+ * rather than in HackentreeNode objects. Each vertex records its parent and
+ * the color of the stem it sits on. The vertices of the tree are also listed
+ * in breadth-first order from the ground, so that every child comes after 
+ * its parent and the children of each vertex form one run of the list, which
+ * each vertex records the start of.
+ *
+ * The value of the subtree at each vertex, stem included, is cached as a
+ * numerator and the exponent of its denominator, with the numerator moved to
+ * a BigInteger only when it does not fit in a long. Valuing the whole tree is
+ * a single sweep from the end of the list back to the ground. Cutting a 
+ * branch marks the path from the cut down to the ground as stale, and only
+ * those vertices are valued again.
+ * 
+ * The first valuation can also be split across a ForkJoinPool: every subtree
+ * of at least a given number of vertices is valued in a task of its own, and
+ * the rest are valued in the task of the nearest large subtree below them.
+ * Values are exact, so the result is the same as the serial sweep.
+ * @author Madeleine Bulkow
+ */
+public class CompactHackentree {
+    
+    private static final byte NONE = 0;
+    private static final byte RED = 1;
+    private static final byte BLUE = 2;
+    private static final byte CUT = 3;
+    private static final int STALE = -1;
+    
+    private final int nodeCount;
+    private final int[] order;
+    private final int[] childStart;
+    private final int[] parent;
+    private final byte[] color;
+    
+    private final long[] valueNum;
+    private final int[] valueExp;
+    private BigInteger[] bigValue;
+    private int[] staleNodes;
+    private int staleCount;
+    private int[] pathStarts;
+    private int pathCount;
+    private boolean allStale;
+    
+    /**
+     * Constructor
+     * 
+     * @param position A Hackenbush game whose part connected to the ground is
+     * a tree. It is not changed.
+     */
+    public CompactHackentree(Hackenbush position){
+        this(position.edges, position.nodeHeights);
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param edges The edges of a tree, with vertex 0 as the ground.
+     * @param heights The height of each vertex above the ground.
+     */
+    CompactHackentree(EdgeStore edges, int[] heights){
+        boolean timed = Metrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        int size = edges.getSize();
+        if(size > 0 && !HeightLayers.isTree(edges, 0)){
+            throw new IllegalArgumentException("The position is not a tree.");
+        }
+        parent = new int[size];
+        color = new byte[size];
+        childStart = new int[size];
+        valueNum = new long[size];
+        valueExp = new int[size];
+        Arrays.fill(parent, -1);
+        Arrays.fill(valueExp, STALE);
+        int[] list = new int[size];
+        int count = 0;
+        if(size > 0){
+            list[count++] = 0;
+        }
+        for(int head = 0; head < count; head++){
+            int node = list[head];
+            childStart[node] = count;
+            int degree = edges.getDegree(node);
+            for(int slot = 0; slot < degree; slot++){
+                int neighbor = edges.getNeighbor(node, slot);
+                if(heights[node] >= heights[neighbor]){
+                    continue;
+                }
+                if(edges.getEdgesAt('r', node, slot) == 1){
+                    color[neighbor] = RED;
+                }
+                else if(edges.getEdgesAt('b', node, slot) == 1){
+                    color[neighbor] = BLUE;
+                }
+                else{
+                    continue;
+                }
+                parent[neighbor] = node;
+                list[count++] = neighbor;
+            }
+        }
+        nodeCount = count;
+        order = Arrays.copyOf(list, count);
+        staleNodes = new int[8];
+        pathStarts = new int[4];
+        allStale = true;
+        if(timed){
+            Metrics.recordTreeBuild(count, System.nanoTime() - start);
+        }
+    }
+    
+    /**
+     * Returns the number of vertices in the tree, including the ground and any
+     * that have been cut off.
+     * @return A nonnegative integer.
+     */
+    public int getNodeCount(){
+        return nodeCount;
+    }
+    
+    /**
+     * Returns one of the vertices of the tree, in breadth-first order from the
+     * ground.
+     * @param k An integer between 0 and (getNodeCount() - 1) inclusive.
+     * @return The index of the vertex.
+     */
+    public int getNodeInOrder(int k){
+        return order[k];
+    }
+    
+    /**
+     * Returns the parent of a vertex.
+     * @param node An integer between 0 and (size - 1) inclusive.
+     * @return The parent, or -1 for the ground, for vertices whose stem has
+     * been cut and for vertices not in the tree.
+     */
+    public int getParent(int node){
+        return color[node] == CUT ? -1 : parent[node];
+    }
+    
+    /**
+     * Returns the color of the stem a vertex sits on.
+     * @param node An integer between 0 and (size - 1) inclusive.
+     * @return 'r' for red, 'b' for blue, or 'e' for the ground, for vertices
+     * whose stem has been cut and for vertices not in the tree.
+     */
+    public char getStemColor(int node){
+        return color[node] == RED ? 'r' : color[node] == BLUE ? 'b' : 'e';
+    }
+    
+    /**
+     * Cuts the stem below a vertex, dropping it and everything above it from
+     * the tree.
+     * @param node An integer between 0 and (size - 1) inclusive.
+     * @return True if the vertex was in the tree and not the ground.
+     */
+    public boolean cut(int node){
+        if(color[node] != RED && color[node] != BLUE){
+            return false;
+        }
+        color[node] = CUT;
+        markStale(parent[node]);
+        return true;
+    }
+    
+    /**
+     * Puts back a stem taken out by cut, together with everything above it.
+     * The stems must be put back in the reverse of the order they were cut.
+     * The vertex itself is valued again too, since a sweep made while it was
+     * cut leaves its stem out.
+     * @param i The vertex at one end of the stem.
+     * @param j The vertex at the other end of the stem.
+     * @param stemColor 'r' for a red stem or 'b' for a blue stem.
+     * @return True if the stem had been cut.
+     */
+    public boolean uncut(int i, int j, char stemColor){
+        int node = parent[i] == j ? i : j;
+        if(color[node] != CUT){
+            return false;
+        }
+        color[node] = stemColor == 'r' ? RED : BLUE;
+        markStale(node);
+        return true;
+    }
+    
+    /**
+     * Returns the value of the whole tree.
+     * @return A new GameValue.
+     */
+    public GameValue getGameValue(){
+        if(nodeCount == 0){
+            return new GameValue(0, 1);
+        }
+        return getGameValue(0);
+    }
+    
+    /**
+     * Returns the value of the subtree at a vertex, together with the stem it
+     * sits on.
+     * @param node A vertex in the tree.
+     * @return A new GameValue.
+     */
+    public GameValue getGameValue(int node){
+        evaluate();
+        ValueAccumulator sum = new ValueAccumulator();
+        addValue(sum, node);
+        return sum.toGameValue();
+    }
+    
+    /**
+     * Values every move a player has, without changing the tree. The value 
+     * after cutting a stem differs from the cached values only on the path
+     * from the cut down to the ground, so each move costs one walk down that
+     * path rather than a copy of the tree.
+     * @param stemColor 'r' for Red's moves or 'b' for Blue's.
+     * @return A list of MoveValues, each from the lower vertex of the stick to
+     * the upper, best first for that player.
+     */
+    public List<MoveValue> rankMoves(char stemColor){
+        byte wanted = stemColor == 'r' ? RED : BLUE;
+        List<MoveValue> moves = new ArrayList<>();
+        if(nodeCount == 0){
+            return moves;
+        }
+        evaluate();
+        boolean[] live = new boolean[parent.length];
+        live[0] = true;
+        ValueAccumulator sum = new ValueAccumulator();
+        for(int k = 1; k < nodeCount; k++){
+            int node = order[k];
+            live[node] = live[parent[node]] && color[node] != CUT;
+            if(live[node] && color[node] == wanted){
+                moves.add(new MoveValue(stemColor, parent[node], node, 
+                        valueWithout(sum, node)));
+            }
+        }
+        MoveValue.sortBestFirst(moves, stemColor);
+        return moves;
+    }
+    
+    /**
+     * Returns the value of the whole tree, valuing large subtrees in parallel
+     * if the tree has not been valued yet.
+     * @param pool The pool to run the tasks in.
+     * @param threshold The least number of vertices in a subtree that gets a
+     * task of its own, at least 1.
+     * @return A new GameValue, the same as getGameValue returns.
+     */
+    public GameValue getGameValue(ForkJoinPool pool, int threshold){
+        if(threshold < 1){
+            throw new IllegalArgumentException(
+                    "The threshold must be positive.");
+        }
+        if(nodeCount == 0){
+            return new GameValue(0, 1);
+        }
+        if(allStale){
+            int[] sizes = new int[parent.length];
+            for(int k = nodeCount - 1; k > 0; k--){
+                sizes[order[k]]++;
+                sizes[parent[order[k]]] += sizes[order[k]];
+            }
+            sizes[0]++;
+            if(sizes[0] >= threshold){
+                boolean timed = Metrics.isEnabled();
+                long start = timed ? System.nanoTime() : 0;
+                pool.invoke(new SubtreeTask(0, sizes, threshold));
+                if(timed){
+                    Metrics.recordValuation(sizes[0], 
+                            System.nanoTime() - start);
+                }
+                allStale = false;
+                staleCount = 0;
+                pathCount = 0;
+            }
+        }
+        return getGameValue(0);
+    }
+    
+    /**
+     * Builds a HackentreeNode tree with the same shape, for code written
+     * against that class. Each node holds its vertex.
+     * @return The root of the new tree.
+     */
+    public HackentreeNode<Integer> toHackentreeNode(){
+        HackentreeNode<Integer> root = new HackentreeNode<>(0);
+        if(nodeCount == 0){
+            return root;
+        }
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        HackentreeNode<Integer>[] built = new HackentreeNode[parent.length];
+        built[0] = root;
+        for(int k = 0; k < nodeCount; k++){
+            int node = order[k];
+            if(built[node] == null){
+                continue;
+            }
+            for(int c = childStart[node]; c < nodeCount 
+                    && parent[order[c]] == node; c++){
+                int child = order[c];
+                if(color[child] != CUT){
+                    built[child] = built[node].addChild(child, 
+                            getStemColor(child));
+                }
+            }
+        }
+        return root;
+    }
+    
+    /**
+     * Values every stale vertex, children before parents. The first time this
+     * is a sweep from the back of the list. After that, the stale vertices 
+     * form one path per cut, each running down to the first vertex an earlier
+     * path had already marked, so the paths are valued latest first and each
+     * from its top down.
+     */
+    private void evaluate(){
+        boolean timed = Metrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        int valued = allStale ? nodeCount : staleCount;
+        ValueAccumulator sum = new ValueAccumulator();
+        if(allStale){
+            for(int k = nodeCount - 1; k >= 0; k--){
+                valueNode(sum, order[k]);
+            }
+            allStale = false;
+        }
+        else{
+            int end = staleCount;
+            for(int path = pathCount - 1; path >= 0; path--){
+                for(int q = pathStarts[path]; q < end; q++){
+                    valueNode(sum, staleNodes[q]);
+                }
+                end = pathStarts[path];
+            }
+        }
+        staleCount = 0;
+        pathCount = 0;
+        if(timed && valued > 0){
+            Metrics.recordValuation(valued, System.nanoTime() - start);
+        }
+    }
+    
+    /**
+     * Values every vertex of a subtree in one thread, breadth first from its
+     * root and then backwards. Vertices above a cut stem are valued too, as
+     * in the sweep, so they are up to date when the stem is put back.
+     * @param root The root of the subtree.
+     * @param subtreeSize The number of vertices in the subtree.
+     */
+    private void valueSubtree(int root, int subtreeSize){
+        ValueAccumulator sum = new ValueAccumulator();
+        int[] list = new int[subtreeSize];
+        int count = 0;
+        list[count++] = root;
+        for(int head = 0; head < count; head++){
+            int node = list[head];
+            for(int c = childStart[node]; c < nodeCount 
+                    && parent[order[c]] == node; c++){
+                list[count++] = order[c];
+            }
+        }
+        for(int k = count - 1; k >= 0; k--){
+            valueNode(sum, list[k]);
+        }
+    }
+    
+    /**
+     * Recomputes the value of a vertex from the values of its children.
+     * @param sum An accumulator, overwritten.
+     * @param node The vertex to value.
+     */
+    private void valueNode(ValueAccumulator sum, int node){
+        sum.reset();
+        for(int c = childStart[node]; c < nodeCount 
+                && parent[order[c]] == node; c++){
+            if(color[order[c]] != CUT){
+                addValue(sum, order[c]);
+            }
+        }
+        if(color[node] == RED || color[node] == BLUE){
+            HackentreeNode.addStem(getStemColor(node), sum);
+        }
+        sum.simplify();
+        valueExp[node] = sum.getExponent();
+        if(sum.fitsInLong()){
+            valueNum[node] = sum.getNum();
+            if(bigValue != null){
+                bigValue[node] = null;
+            }
+        }
+        else{
+            if(bigValue == null){
+                createBigValues();
+            }
+            bigValue[node] = sum.getBigNum();
+        }
+    }
+    
+    /**
+     * Finds the value the whole tree would have if the stem below a vertex 
+     * were cut, revaluing each vertex on the path down to the ground from 
+     * its children and leaving the cached values alone. At the ground, the
+     * changed child is swapped into the cached total.
+     * @param sum An accumulator, overwritten.
+     * @param node A vertex in the tree other than the ground.
+     * @return A new GameValue.
+     */
+    private GameValue valueWithout(ValueAccumulator sum, int node){
+        GameValue changed = null;
+        int child = node;
+        int below = parent[node];
+        while(below != 0){
+            sum.reset();
+            for(int c = childStart[below]; c < nodeCount 
+                    && parent[order[c]] == below; c++){
+                int other = order[c];
+                if(other != child && color[other] != CUT){
+                    addValue(sum, other);
+                }
+            }
+            if(changed != null){
+                sum.add(changed);
+            }
+            HackentreeNode.addStem(getStemColor(below), sum);
+            changed = sum.toGameValue();
+            child = below;
+            below = parent[below];
+        }
+        sum.reset();
+        addValue(sum, 0);
+        if(bigValue != null && bigValue[child] != null){
+            sum.add(bigValue[child].negate(), valueExp[child]);
+        }
+        else{
+            sum.add(-valueNum[child], valueExp[child]);
+        }
+        if(changed != null){
+            sum.add(changed);
+        }
+        return sum.toGameValue();
+    }
+    
+    /**
+     * Creates the array of numerators too large for a long. Tasks valuing 
+     * different subtrees may get here at once, so only the first creates it.
+     */
+    private synchronized void createBigValues(){
+        if(bigValue == null){
+            bigValue = new BigInteger[parent.length];
+        }
+    }
+    
+    /**
+     * Adds the cached value of a vertex to a sum.
+     * @param sum An accumulator.
+     * @param node A vertex whose value is up to date.
+     */
+    private void addValue(ValueAccumulator sum, int node){
+        if(bigValue != null && bigValue[node] != null){
+            sum.add(bigValue[node], valueExp[node]);
+        }
+        else{
+            sum.add(valueNum[node], valueExp[node]);
+        }
+    }
+    
+    /**
+     * Marks a vertex and every vertex below it on the path to the ground as
+     * stale, listing them as one more path to be valued again. A vertex is 
+     * only ever stale when its parent is, so the walk stops at the first stale
+     * vertex.
+     * @param node The vertex whose children have changed.
+     */
+    private void markStale(int node){
+        if(allStale || node == -1 || valueExp[node] == STALE){
+            return;
+        }
+        if(pathCount == pathStarts.length){
+            pathStarts = Arrays.copyOf(pathStarts, 2 * pathCount);
+        }
+        pathStarts[pathCount++] = staleCount;
+        while(node != -1 && valueExp[node] != STALE){
+            valueExp[node] = STALE;
+            if(staleCount == staleNodes.length){
+                staleNodes = Arrays.copyOf(staleNodes, 2 * staleCount);
+            }
+            staleNodes[staleCount++] = node;
+            node = parent[node];
+        }
+    }
+    
+    /**
+     * SubtreeTask values the subtree at one vertex, forking a task for each 
+     * child whose subtree is large enough and valuing the other children's 
+     * subtrees itself.
+     */
+    private class SubtreeTask extends RecursiveAction {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final int root;
+        private final int[] sizes;
+        private final int threshold;
+        
+        /**
+         * Constructor
+         * 
+         * @param root The root of the subtree.
+         * @param sizes The number of vertices in the subtree at each vertex.
+         * @param threshold The least number of vertices in a subtree that gets
+         * a task of its own.
+         */
+        SubtreeTask(int root, int[] sizes, int threshold){
+            this.root = root;
+            this.sizes = sizes;
+            this.threshold = threshold;
+        }
+        
+        @Override
+        protected void compute(){
+            List<SubtreeTask> forked = new ArrayList<>();
+            for(int c = childStart[root]; c < nodeCount 
+                    && parent[order[c]] == root; c++){
+                int child = order[c];
+                if(sizes[child] >= threshold){
+                    SubtreeTask task = new SubtreeTask(child, sizes, 
+                            threshold);
+                    task.fork();
+                    forked.add(task);
+                }
+                else{
+                    valueSubtree(child, sizes[child]);
+                }
+            }
+            for(SubtreeTask task: forked){
+                task.join();
+            }
+            valueNode(new ValueAccumulator(), root);
+        }
+    }
+}
@@ -0,0 +1,482 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.hackenbush;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import my.combinatorialgame.GameValue;
+import my.combinatorialgame.ValueAccumulator;
+
+/**
+ * ComponentSum keeps the value of a Hackenbush position as the sum of the 
+ * values of its components, the parts of the graph that meet only at the 
+ * ground. Each component is valued by the cheapest method that applies to it:
+ * a stalk is read off directly, a tree is valued as a CompactHackentree, and
+ * anything else is first reduced by a Simplification, which often leaves a 
+ * tree, and otherwise searched by a HackenbushSolver. Components that need 
+ * valuing are handed out to a ForkJoinPool together, and the solver for each
+ * component shares the values it finds with the others through a 
+ * SharedValueCache, which several ComponentSums may also share.
+ * 
+ * The values are cached, and moves made through ComponentSum only mark the 
+ * component they touch, which is split again where the cut has broken it, 
+ * so that the rest of the position is not valued again.
+ * @author Madeleine Bulkow
+ */
+public class ComponentSum {
+    
+    private static final long LOCAL_CACHE_BYTES = 1L << 20;
+    
+    private final Hackenbush position;
+    private final long maxSearchSticks;
+    private final ForkJoinPool pool;
+    private final SharedValueCache cache;
+    private final int[] componentOf;
+    private final List<Component> components = new ArrayList<>();
+    private int[] freeIds = new int[8];
+    private int freeCount;
+    
+    /**
+     * Constructor
+     * 
+     * @param position A Hackenbush game. It is used directly rather than 
+     * copied, and moves should be made on it through this object.
+     */
+    public ComponentSum(Hackenbush position){
+        this(position, Long.MAX_VALUE, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param position A Hackenbush game. It is used directly rather than 
+     * copied, and moves should be made on it through this object.
+     * @param maxSearchSticks The most sticks a component that is not a tree
+     * may have and still be searched.
+     * @param pool The pool to value components in.
+     */
+    public ComponentSum(Hackenbush position, long maxSearchSticks, 
+            ForkJoinPool pool){
+        this(position, maxSearchSticks, pool, 
+                new SharedValueCache(HackenbushSolver.DEFAULT_CACHE_BYTES));
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param position A Hackenbush game. It is used directly rather than 
+     * copied, and moves should be made on it through this object.
+     * @param maxSearchSticks The most sticks a component that is not a tree
+     * may have and still be searched.
+     * @param pool The pool to value components in.
+     * @param cache A cache for the values of searched components, possibly
+     * shared with other ComponentSums, or null.
+     */
+    public ComponentSum(Hackenbush position, long maxSearchSticks, 
+            ForkJoinPool pool, SharedValueCache cache){
+        this.position = position;
+        this.maxSearchSticks = maxSearchSticks;
+        this.pool = pool;
+        this.cache = cache;
+        int size = position.getSize();
+        componentOf = new int[size];
+        Arrays.fill(componentOf, -1);
+        int[] vertices = new int[Math.max(size - 1, 0)];
+        for(int i = 1; i < size; i++){
+            vertices[i - 1] = i;
+        }
+        split(vertices);
+    }
+    
+    /**
+     * Makes a move on the position, and marks the component it was made in
+     * as needing to be valued again. A move the position refuses changes 
+     * nothing.
+     * @param color 'r' for red or 'b' for blue
+     * @param i An integer between 0 and (size - 1) inclusive.
+     * @param j An integer between 0 and (size - 1) inclusive.
+     * @return The message returned by the position's move.
+     */
+    public String move(char color, int i, int j){
+        int moves = position.getMoveCount();
+        String message = position.move(color, i, j);
+        if(position.getMoveCount() != moves){
+            splitAgain(new int[]{i, j});
+        }
+        return message;
+    }
+    
+    /**
+     * Takes back the last move made on the position, joining again the 
+     * components it had split.
+     * @return "true" if there was a move to take back.
+     */
+    public boolean unmove(){
+        int[] touched = position.getLastMoveVertices();
+        if(!position.unmove()){
+            return false;
+        }
+        splitAgain(touched);
+        return true;
+    }
+    
+    /**
+     * Makes again the last move taken back on the position.
+     * @return "true" if there was a move to redo.
+     */
+    public boolean redo(){
+        if(!position.redo()){
+            return false;
+        }
+        splitAgain(position.getLastMoveVertices());
+        return true;
+    }
+    
+    /**
+     * Drops the components containing any of the given vertices and splits
+     * their vertices, together with the given ones, into components again.
+     * @param touched Vertices whose sticks have changed, possibly with 
+     * repeats.
+     */
+    private void splitAgain(int[] touched){
+        List<Integer> vertices = new ArrayList<>();
+        for(int node: touched){
+            if(node == 0){
+                continue;
+            }
+            int id = componentOf[node];
+            if(id == -1){
+                vertices.add(node);
+                continue;
+            }
+            Component component = components.get(id);
+            components.set(id, null);
+            if(freeCount == freeIds.length){
+                freeIds = Arrays.copyOf(freeIds, 2 * freeCount);
+            }
+            freeIds[freeCount++] = id;
+            for(int member: component.vertices){
+                componentOf[member] = -1;
+                vertices.add(member);
+            }
+        }
+        int[] list = new int[vertices.size()];
+        for(int k = 0; k < list.length; k++){
+            list[k] = vertices.get(k);
+        }
+        split(list);
+    }
+    
+    /**
+     * Returns the cache searched components are valued through.
+     * @return The SharedValueCache, or null if there is none.
+     */
+    public SharedValueCache getCache(){
+        return cache;
+    }
+    
+    /**
+     * Returns the number of components currently in the position.
+     * @return A nonnegative integer.
+     */
+    public int getComponentCount(){
+        int count = 0;
+        for(Component component: components){
+            if(component != null){
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Finds the value of the position, valuing any components whose values
+     * are not cached.
+     * @return A new GameValue, or null if some component would need a search
+     * over more than the allowed number of sticks.
+     */
+    public GameValue getGameValue(){
+        List<ComponentTask> tasks = new ArrayList<>();
+        int[] label = new int[position.getSize()];
+        for(Component component: components){
+            if(component != null && component.stale){
+                tasks.add(new ComponentTask(component, 
+                        extract(component.vertices, label)));
+            }
+        }
+        if(tasks.size() == 1){
+            tasks.get(0).compute();
+        }
+        else if(tasks.size() > 1){
+            pool.invoke(new RecursiveAction(){
+                @Override
+                protected void compute(){
+                    invokeAll(tasks);
+                }
+            });
+        }
+        ValueAccumulator sum = new ValueAccumulator();
+        if(position.getSize() > 0){
+            sum.add(position.getEdgeCount('b', 0, 0) 
+                    - position.getEdgeCount('r', 0, 0));
+        }
+        for(Component component: components){
+            if(component == null){
+                continue;
+            }
+            if(component.value == null){
+                return null;
+            }
+            sum.add(component.value);
+        }
+        return sum.toGameValue();
+    }
+    
+    /**
+     * Groups the given vertices into components by breadth-first searches 
+     * that never pass through the ground, and adds a stale component for 
+     * each group that still has sticks. Ids freed by splitAgain are used 
+     * before new ones, so the list does not grow as moves are made.
+     * @param vertices Vertices other than the ground, none of them in a
+     * component.
+     */
+    private void split(int[] vertices){
+        int[] queue = new int[vertices.length];
+        for(int first: vertices){
+            if(componentOf[first] != -1 || !hasSticks(first)){
+                continue;
+            }
+            int id = freeCount > 0 ? freeIds[--freeCount] 
+                    : components.size();
+            int head = 0;
+            int tail = 0;
+            componentOf[first] = id;
+            queue[tail++] = first;
+            while(head < tail){
+                int node = queue[head++];
+                int degree = position.getDegree(node);
+                for(int slot = 0; slot < degree; slot++){
+                    int neighbor = position.getNeighbor(node, slot);
+                    if(neighbor != 0 && componentOf[neighbor] == -1 
+                            && sticksAt(node, slot) > 0){
+                        componentOf[neighbor] = id;
+                        queue[tail++] = neighbor;
+                    }
+                }
+            }
+            Component component = new Component(Arrays.copyOf(queue, tail));
+            if(id == components.size()){
+                components.add(component);
+            }
+            else{
+                components.set(id, component);
+            }
+        }
+    }
+    
+    /**
+     * Returns whether any sticks meet at a vertex.
+     * @param node An integer between 0 and (size - 1) inclusive.
+     * @return True if the vertex has at least one stick.
+     */
+    private boolean hasSticks(int node){
+        int degree = position.getDegree(node);
+        for(int slot = 0; slot < degree; slot++){
+            if(sticksAt(node, slot) > 0){
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Returns the number of sticks of either color in a neighbour slot.
+     * @param node An integer between 0 and (size - 1) inclusive.
+     * @param slot An integer between 0 and (degree - 1) inclusive.
+     * @return A nonnegative number of sticks.
+     */
+    private int sticksAt(int node, int slot){
+        return position.getEdgeCountAt('r', node, slot) 
+                + position.getEdgeCountAt('b', node, slot);
+    }
+    
+    /**
+     * Copies a component into an EdgeStore of its own, with the ground as
+     * vertex 0 and the component's vertices numbered from 1 in order.
+     * @param vertices The vertices of the component.
+     * @param label Scratch space with one entry per vertex of the position.
+     * @return A new EdgeStore.
+     */
+    private EdgeStore extract(int[] vertices, int[] label){
+        for(int k = 0; k < vertices.length; k++){
+            label[vertices[k]] = k + 1;
+        }
+        SparseEdgeStore store = new SparseEdgeStore(vertices.length + 1);
+        for(int node: vertices){
+            int degree = position.getDegree(node);
+            for(int slot = 0; slot < degree; slot++){
+                int neighbor = position.getNeighbor(node, slot);
+                int other = neighbor == 0 ? 0 : label[neighbor];
+                if(other != 0 && other < label[node]){
+                    continue;
+                }
+                store.addEdges('r', label[node], other, 
+                        position.getEdgeCountAt('r', node, slot));
+                store.addEdges('b', label[node], other, 
+                        position.getEdgeCountAt('b', node, slot));
+            }
+        }
+        return store;
+    }
+    
+    /**
+     * Values a component by the cheapest method that applies to it. A search
+     * gets a solver of its own, which shares values through the cache.
+     * @param edges The component, with the ground as vertex 0.
+     * @return A GameValue, or null if the component would need a search over
+     * more than the allowed number of sticks.
+     */
+    private GameValue value(EdgeStore edges){
+        GameValue stalk = stalkValue(edges);
+        if(stalk != null){
+            return stalk;
+        }
+        if(HeightLayers.isTree(edges, 0)){
+            return new CompactHackentree(edges, 
+                    HeightLayers.findHeights(edges, 0)).getGameValue();
+        }
+        HackenbushSolver solver = new HackenbushSolver(true, null, 
+                LOCAL_CACHE_BYTES, cache);
+        Simplification simplified = new Simplification(edges, solver, 
+                maxSearchSticks);
+        if(simplified.isTree()){
+            return new CompactHackentree(simplified.getPosition())
+                    .getGameValue();
+        }
+        if(simplified.getSticksAfter() > maxSearchSticks){
+            return null;
+        }
+        return solver.solve(simplified.getPosition());
+    }
+    
+    /**
+     * Values a component directly if it is a single stalk, a path of single 
+     * sticks rising from the ground, by adding its sticks from the top down.
+     * @param edges The component, with the ground as vertex 0.
+     * @return A GameValue, or null if the component is not a stalk.
+     */
+    private static GameValue stalkValue(EdgeStore edges){
+        int size = edges.getSize();
+        char[] colors = new char[size - 1];
+        int previous = 0;
+        int node = 0;
+        for(int k = 0; k < size - 1; k++){
+            int next = -1;
+            int degree = edges.getDegree(node);
+            for(int slot = 0; slot < degree; slot++){
+                int neighbor = edges.getNeighbor(node, slot);
+                int red = edges.getEdgesAt('r', node, slot);
+                int blue = edges.getEdgesAt('b', node, slot);
+                if(red + blue == 0 || (neighbor == previous && k > 0)){
+                    continue;
+                }
+                if(next != -1 || red + blue > 1 || neighbor == node){
+                    return null;
+                }
+                next = neighbor;
+                colors[k] = red > 0 ? 'r' : 'b';
+            }
+            if(next == -1){
+                return null;
+            }
+            previous = node;
+            node = next;
+        }
+        int degree = edges.getDegree(node);
+        for(int slot = 0; slot < degree; slot++){
+            if(edges.getNeighbor(node, slot) != previous 
+                    && edges.getEdgesAt('r', node, slot) 
+                    + edges.getEdgesAt('b', node, slot) > 0){
+                return null;
+            }
+        }
+        ValueAccumulator sum = new ValueAccumulator();
+        for(int k = colors.length - 1; k >= 0; k--){
+            HackentreeNode.addStem(colors[k], sum);
+        }
+        return sum.toGameValue();
+    }
+    
+    /**
+     * Component holds the vertices of one component and its cached value.
+     */
+    private static class Component {
+        
+        private final int[] vertices;
+        private GameValue value;
+        private boolean stale = true;
+        
+        /**
+         * Constructor
+         * 
+         * @param vertices The vertices of the component, not including the
+         * ground.
+         */
+        Component(int[] vertices){
+            this.vertices = vertices;
+        }
+    }
+    
+    /**
+     * ComponentTask values one component.
+     */
+    private class ComponentTask extends RecursiveAction {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final Component component;
+        private final EdgeStore edges;
+        
+        /**
+         * Constructor
+         * 
+         * @param component The component to value.
+         * @param edges A copy of the component's sticks.
+         */
+        ComponentTask(Component component, EdgeStore edges){
+            this.component = component;
+            this.edges = edges;
+        }
+        
+        @Override
+        protected void compute(){
+            component.value = value(edges);
+            component.stale = false;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.hackenbush;
+
+/**
+ * DenseEdgeStore keeps the sticks of a Hackenbush game in a pair of symmetric
+ * adjacency matrices, one for red sticks and one for blue sticks. Every vertex
+ * has a slot for every other vertex, so it is only suitable for small, dense
+ * games; SparseEdgeStore should be preferred otherwise.
+ * @author Madeleine Bulkow
+ */
+public class DenseEdgeStore implements EdgeStore {
+    
+    private final int size;
+    private final int[][] redGraph;
+    private final int[][] blueGraph;
+    private long redTotal;
+    private long blueTotal;
+    
+    /**
+     * Constructor. The matrices are used directly rather than copied, and are 
+     * assumed to be square, symmetric and nonnegative.
+     * 
+     * @param redEdges A size by size array of red stick counts.
+     * @param blueEdges A size by size array of blue stick counts.
+     */
+    public DenseEdgeStore(int[][] redEdges, int[][] blueEdges){
+        size = redEdges.length;
+        redGraph = redEdges;
+        blueGraph = blueEdges;
+        for(int i = 0; i < size; i++){
+            for(int j = i; j < size; j++){
+                redTotal += redGraph[i][j];
+                blueTotal += blueGraph[i][j];
+            }
+        }
+    }
+    
+    @Override
+    public int getSize(){
+        return size;
+    }
+    
+    @Override
+    public int getEdges(char color, int i, int j){
+        if(i < 0 || j < 0 || i >= size || j >= size){
+            return 0;
+        }
+        return getEdgesAt(color, i, j);
+    }
+    
+    @Override
+    public void addEdges(char color, int i, int j, int count){
+        if(count < 0){
+            throw new IllegalArgumentException(
+                    "Edge numbers must be positive.");
+        }
+        int[][] graph = graph(color);
+        if(graph == null){
+            return;
+        }
+        graph[i][j] += count;
+        if(i != j){
+            graph[j][i] += count;
+        }
+        if(color == 'r'){
+            redTotal += count;
+        }
+        else{
+            blueTotal += count;
+        }
+    }
+    
+    @Override
+    public int removeEdges(char color, int i, int j, int count){
+        int[][] graph = graph(color);
+        if(graph == null || count <= 0 || i < 0 || j < 0 || i >= size
+                || j >= size){
+            return 0;
+        }
+        int removed = Math.min(count, graph[i][j]);
+        graph[i][j] -= removed;
+        if(i != j){
+            graph[j][i] -= removed;
+        }
+        if(color == 'r'){
+            redTotal -= removed;
+        }
+        else{
+            blueTotal -= removed;
+        }
+        return removed;
+    }
+    
+    @Override
+    public int getDegree(int node){
+        return size;
+    }
+    
+    @Override
+    public int getNeighbor(int node, int slot){
+        return slot;
+    }
+    
+    @Override
+    public int getEdgesAt(char color, int node, int slot){
+        int[][] graph = graph(color);
+        if(graph == null){
+            return 0;
+        }
+        return graph[node][slot];
+    }
+    
+    @Override
+    public long getEdgeTotal(char color){
+        if(color == 'r'){
+            return redTotal;
+        }
+        else if(color == 'b'){
+            return blueTotal;
+        }
+        return 0;
+    }
+    
+    @Override
+    public DenseEdgeStore copy(){
+        int[][] red = new int[size][];
+        int[][] blue = new int[size][];
+        for(int i = 0; i < size; i++){
+            red[i] = redGraph[i].clone();
+            blue[i] = blueGraph[i].clone();
+        }
+        return new DenseEdgeStore(red, blue);
+    }
+    
+    /**
+     * Returns the matrix for a color.
+     * @param color 'r' for red or 'b' for blue.
+     * @return The matrix, or null if a different color.
+     */
+    private int[][] graph(char color){
+        if(color == 'r'){
+            return redGraph;
+        }
+        else if(color == 'b'){
+            return blueGraph;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.hackenbush;
+
+/**
+ * EdgeStore is the storage layer behind a Hackenbush game. For every unordered
+ * pair of vertices it records how many red and how many blue sticks join them,
+ * where a pair (i, i) holds the loops at vertex i.
+ * 
+ * Neighbours of a vertex are visited through numbered slots, from 0 up to 
+ * getDegree(node) - 1. A slot may hold zero sticks of either color, and
+ * removing edges may reorder the slots of the vertices involved, so callers
+ * that remove edges while iterating should walk the slots backwards.
+ * @author Madeleine Bulkow
+ */
+public interface EdgeStore {
+    
+    /**
+     * Returns the number of vertices in the store, including the ground.
+     * @return A nonnegative integer number of vertices.
+     */
+    public int getSize();
+    
+    /**
+     * Returns the number of sticks of the given color between two vertices.
+     * @param color 'r' for red or 'b' for blue.
+     * @param i An integer between 0 and (size - 1) inclusive.
+     * @param j An integer between 0 and (size - 1) inclusive.
+     * @return A nonnegative number of sticks, 0 for any other color.
+     */
+    public int getEdges(char color, int i, int j);
+    
+    /**
+     * Adds sticks of the given color between two vertices.
+     * @param color 'r' for red or 'b' for blue.
+     * @param i An integer between 0 and (size - 1) inclusive.
+     * @param j An integer between 0 and (size - 1) inclusive.
+     * @param count A nonnegative number of sticks to add.
+     */
+    public void addEdges(char color, int i, int j, int count);
+    
+    /**
+     * Removes up to count sticks of the given color between two vertices.
+     * @param color 'r' for red or 'b' for blue.
+     * @param i An integer between 0 and (size - 1) inclusive.
+     * @param j An integer between 0 and (size - 1) inclusive.
+     * @param count A nonnegative number of sticks to remove.
+     * @return The number of sticks actually removed.
+     */
+    public int removeEdges(char color, int i, int j, int count);
+    
+    /**
+     * Returns the number of neighbour slots of a vertex.
+     * @param node An integer between 0 and (size - 1) inclusive.
+     * @return A nonnegative number of slots.
+     */
+    public int getDegree(int node);
+    
+    /**
+     * Returns the vertex held in one of the neighbour slots of a vertex.
+     * @param node An integer between 0 and (size - 1) inclusive.
+     * @param slot An integer between 0 and (getDegree(node) - 1) inclusive.
+     * @return The neighbouring vertex, which is node itself for loops.
+     */
+    public int getNeighbor(int node, int slot);
+    
+    /**
+     * Returns the number of sticks of the given color held in one of the
+     * neighbour slots of a vertex.
+     * @param color 'r' for red or 'b' for blue.
+     * @param node An integer between 0 and (size - 1) inclusive.
+     * @param slot An integer between 0 and (getDegree(node) - 1) inclusive.
+     * @return A nonnegative number of sticks, 0 for any other color.
+     */
+    public int getEdgesAt(char color, int node, int slot);
+    
+    /**
+     * Returns the total number of sticks of the given color.
+     * @param color 'r' for red or 'b' for blue.
+     * @return A nonnegative number of sticks, 0 for any other color.
+     */
+    public long getEdgeTotal(char color);
+    
+    /**
+     * Creates an independent copy of this store.
+     * @return A new EdgeStore holding the same sticks.
+     */
+    public EdgeStore copy();
+}
@@ -24,13 +24,17 @@
 
 package my.hackenbush;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * The Hackenbush class holds a generic Red-Blue Hackenbush game, represented
- * by two (necessarily symmetric) adjacency matrices, one for red sticks and 
- * one for blue sticks. The vertex at index 0 is treated as "ground" for the 
- * purposes of edge deletion.
+ * by an EdgeStore recording the number of red and blue sticks between each 
+ * pair of vertices. It can be built from two (necessarily symmetric) adjacency
+ * matrices, one for red sticks and one for blue sticks, which are stored
+ * sparsely. The vertex at index 0 is treated as "ground" for the purposes of 
+ * edge deletion.
  * Note that this means all Hackenbush games represented by this class will
  * necessarily appear connected at the ground. However, since connecting nodes 
  * at the ground level does not affect the value of a game, any Red-Blue 
@@ -45,16 +49,10 @@ public class Hackenbush {
     protected int size;
     
     /**
-     * An adjacency matrix for red edges. Must be symmetric, contain only 
-     * nonnegative integers.
+     * The red and blue edges of the game. Every pair of vertices holds a
+     * nonnegative number of sticks of each color.
      */
-    protected int[][] redGraph;
-    
-    /**
-     * An adjacency matrix for blue edges. Must be symmetric, contain only
-     * nonnegative integers.
-     */
-    protected int[][] blueGraph;
+    protected EdgeStore edges;
     
     /**
      * An array containing the height of each node (i.e the length of the
@@ -70,20 +68,56 @@ public class Hackenbush {
     protected int maxHeight;
     
     /**
-     * An array of linked lists, of length maxHeight, where the ith list 
-     * contains the indices of all nodes of height i.
+     * The nodes that are connected to the ground, grouped by height.
      */
-    protected LinkedList<Integer>[] nodesByHeight;
+    protected HeightLayers layers;
+    
+    /**
+     * Set when nodeHeights has changed without rebuilding maxHeight and
+     * layers. They are brought up to date by updateLayers().
+     */
+    protected boolean layersStale;
+    
     /*
-    TODO Figure out whether an ArrayList would work better. Optimize usage for
-    chosen data structure.
+    Scratch space for repairing heights after a cut, sized once so that a move
+    only costs time proportional to the part of the graph it affects. A node is
+    marked in one of the arrays when its entry equals repairStamp.
     */
+    private int[] repairQueue;
+    private int[] queuedMark;
+    private int[] affectedMark;
+    private int[] settledMark;
+    private int repairStamp;
+    
+    /**
+     * A Zobrist-style hash of the sticks in the game: the exclusive or, over 
+     * every pair of vertices and color, of a pseudorandom key for the number
+     * of sticks there. It is updated in constant time for each pair a move 
+     * changes.
+     */
+    protected long positionHash;
+    
+    /**
+     * A second hash of the sticks in the game, made the same way as 
+     * positionHash from independent keys. Together they form a 128-bit key.
+     */
+    protected long positionCheck;
+    
+    private static final long HASH_SEED = 0x9E3779B97F4A7C15L;
+    private static final long CHECK_SEED = 0xD1B54A32D192ED03L;
     
     /**
      * Keeps track of whether the game has been won.
      */
     protected boolean isWon;
     
+    /*
+    The record of every move made, so that moves can be taken back and redone.
+    It is created by the first move, so copies start with an empty history.
+    */
+    private MoveJournal journal;
+    private boolean redoing;
+    
     /**
      * Constructor.
      * 
@@ -99,8 +133,6 @@ public class Hackenbush {
         if(size < 0) {
             throw new IllegalArgumentException("Size must be nonnegative.");
         }
-        this.size = size;
-        nodesByHeight = new LinkedList[size];
         if(size != redEdges.length || size != blueEdges.length){
             throw new IllegalArgumentException("Unequal sizes.");
         }
@@ -122,10 +154,65 @@ public class Hackenbush {
                 }
             }
         }
+        initialize(SparseEdgeStore.fromMatrices(redEdges, blueEdges));
+    }
+    
+    /**
+     * Constructor. The store is used directly rather than copied, so later
+     * moves will remove sticks from it.
+     * 
+     * @param edges The red and blue edges of the Hackenbush. Vertex 0 is
+     * treated as the ground.
+     */
+    public Hackenbush(EdgeStore edges){
+        if(edges == null){
+            throw new IllegalArgumentException("Edges must be nonnull.");
+        }
+        initialize(edges);
+    }
+    
+    /**
+     * Copy constructor. The new game gets its own copy of the edges, and 
+     * takes the heights and position hashes of the original without 
+     * recalculating them.
+     * 
+     * @param original The Hackenbush to copy.
+     */
+    public Hackenbush(Hackenbush original){
+        size = original.size;
+        edges = original.edges.copy();
+        nodeHeights = original.nodeHeights.clone();
+        layersStale = true;
+        isWon = original.isWon;
+        positionHash = original.positionHash;
+        positionCheck = original.positionCheck;
+    }
+    
+    /**
+     * Sets up the game around the given edges and removes anything not
+     * connected to the ground.
+     * @param edges The red and blue edges of the Hackenbush.
+     */
+    private void initialize(EdgeStore edges){
+        this.size = edges.getSize();
+        this.edges = edges;
         isWon = false;
-        redGraph = redEdges;
-        blueGraph = blueEdges;
-        calculateHeights();
+        positionHash = 0;
+        positionCheck = 0;
+        for(int i = 0; i < size; i++){
+            int degree = edges.getDegree(i);
+            for(int slot = 0; slot < degree; slot++){
+                int j = edges.getNeighbor(i, slot);
+                if(j < i){
+                    continue;
+                }
+                for(char color: new char[]{'r', 'b'}){
+                    int count = edges.getEdgesAt(color, i, slot);
+                    positionHash ^= stickHash(HASH_SEED, i, j, color, count);
+                    positionCheck ^= stickHash(CHECK_SEED, i, j, color, count);
+                }
+            }
+        }
         cleanUpDetached();
     }
     
@@ -133,44 +220,21 @@ public class Hackenbush {
      * Calculates the height (the length of the shortest path to the ground) of
      * each node in the Hackenbush. If the node is not connected to the ground,
      * its height will be size + 1.
-     * Updates nodeHeights and nodesByHeight.
+     * Updates nodeHeights, and marks maxHeight and layers as stale.
      */
     private void calculateHeights(){
-        /*
-        Peforms a breadth-first search of the graph, starting at the root
-        to calculate the height of each node. It is stored both in nodeHeights,
-        an array of integers, and in nodesByHeight, an array of lists.
-        */
-        nodeHeights = new int[size];
-        for(int i = 0; i<size; i++){
-            nodeHeights[i] = size + 1;
-            nodesByHeight[i] = new LinkedList<>();
-        }
-        int currentHeight;
-        LinkedList<Integer> nextNodes = new LinkedList();
-        nextNodes.add(0);
-        nodeHeights[0] = 0;
-        nodesByHeight[0].add(0);
-        while(nextNodes.size() > 0){
-            int currentNode = nextNodes.removeFirst();
-            currentHeight = nodeHeights[currentNode];
-            if(currentHeight > maxHeight){
-                maxHeight = currentHeight;
-            }
-            for(int i = currentNode; i < size; i++){
-                if((redGraph[currentNode][i]>0 || blueGraph[currentNode][i]>0) 
-                        && nodeHeights[i] == size + 1){
-                    nextNodes.add(i);
-                    nodeHeights[i] = currentHeight + 1;
-                    nodesByHeight[currentHeight+1].add(i);
-                }
-            }
+        boolean timed = Metrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        nodeHeights = HeightLayers.findHeights(edges, 0);
+        layersStale = true;
+        if(timed){
+            Metrics.recordHeights(true, size, System.nanoTime() - start);
         }
     }
     
     /**
      * Removes all edges that are not connected to the ground.
-     * Updates nodeHeights, nodesByHeight, redEdges, and blueEdges.
+     * Updates nodeHeights, layers, redEdges, and blueEdges.
      * @return The number of red edges and blue edges lost.
      */
     private int[] cleanUpDetached(){
@@ -179,19 +243,272 @@ public class Hackenbush {
         int blueEdgesLost = 0;
         for(int i = 0; i<size; i++){
             if(nodeHeights[i] == size + 1){
-                for(int j = 0; j<size; j++){
-                    redEdgesLost += redGraph[i][j];
-                    redGraph[i][j] = 0;
-                    redGraph[j][i] = 0;
-                    blueEdgesLost += blueGraph[i][j];
-                    blueGraph[i][j] = 0;
-                    blueGraph[j][i] = 0;
+                for(int slot = edges.getDegree(i) - 1; slot >= 0; slot--){
+                    int j = edges.getNeighbor(i, slot);
+                    int red = edges.getEdgesAt('r', i, slot);
+                    int blue = edges.getEdgesAt('b', i, slot);
+                    redEdgesLost += removeSticks('r', i, j, red, red);
+                    blueEdgesLost += removeSticks('b', i, j, blue, blue);
                 }
             }
         }
         return new int[]{redEdgesLost, blueEdgesLost};
     };
     
+    /**
+     * Brings the heights of all nodes up to date after the last stick between
+     * vertices i and j has been cut, and removes any edges the cut left 
+     * detached from the ground.
+     * 
+     * Only nodes whose every shortest path to the ground ran through the cut 
+     * can change height, so those are found first by walking upwards from the
+     * higher endpoint. Their new heights are then found by a breadth-first 
+     * search seeded from their unaffected neighbours, and any affected node 
+     * the search cannot reach is detached.
+     * Updates nodeHeights, redEdges, and blueEdges, and marks maxHeight and
+     * layers as stale.
+     * @param i An integer between 0 and (size - 1) inclusive.
+     * @param j An integer between 0 and (size - 1) inclusive.
+     * @return The number of red edges and blue edges lost.
+     */
+    private int[] repairAfterCut(int i, int j){
+        if(i == j || edges.getEdges('r', i, j) + edges.getEdges('b', i, j) > 0
+                || nodeHeights[i] == nodeHeights[j]){
+            return new int[]{0, 0};
+        }
+        boolean timed = Metrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        int upper = nodeHeights[i] > nodeHeights[j] ? i : j;
+        if(repairQueue == null){
+            repairQueue = new int[size];
+            queuedMark = new int[size];
+            affectedMark = new int[size];
+            settledMark = new int[size];
+        }
+        if(++repairStamp == Integer.MAX_VALUE){
+            Arrays.fill(queuedMark, 0);
+            Arrays.fill(affectedMark, 0);
+            Arrays.fill(settledMark, 0);
+            repairStamp = 1;
+        }
+        int stamp = repairStamp;
+        
+        // Find the nodes left without a neighbour one step closer to the 
+        // ground. The queue visits them in order of height, so every lower
+        // neighbour has been classified before a node is examined.
+        int head = 0;
+        int tail = 0;
+        int affected = 0;
+        repairQueue[tail++] = upper;
+        queuedMark[upper] = stamp;
+        while(head < tail){
+            int node = repairQueue[head++];
+            int height = nodeHeights[node];
+            boolean supported = false;
+            int degree = edges.getDegree(node);
+            for(int slot = 0; slot < degree && !supported; slot++){
+                int neighbor = edges.getNeighbor(node, slot);
+                supported = nodeHeights[neighbor] == height - 1
+                        && affectedMark[neighbor] != stamp
+                        && hasSticks(node, slot);
+            }
+            if(supported){
+                continue;
+            }
+            affectedMark[node] = stamp;
+            affected++;
+            for(int slot = 0; slot < degree; slot++){
+                int neighbor = edges.getNeighbor(node, slot);
+                if(nodeHeights[neighbor] == height + 1
+                        && queuedMark[neighbor] != stamp
+                        && hasSticks(node, slot)){
+                    queuedMark[neighbor] = stamp;
+                    repairQueue[tail++] = neighbor;
+                }
+            }
+        }
+        if(affected == 0){
+            if(timed){
+                Metrics.recordHeights(false, tail, System.nanoTime() - start);
+            }
+            return new int[]{0, 0};
+        }
+        
+        // Gather the affected nodes, and seed each with the best height its
+        // unaffected neighbours offer.
+        int[] affectedNodes = new int[affected];
+        long[] seeds = new long[affected];
+        int seedCount = 0;
+        int k = 0;
+        for(int q = 0; q < tail; q++){
+            int node = repairQueue[q];
+            if(affectedMark[node] != stamp){
+                continue;
+            }
+            affectedNodes[k++] = node;
+            int best = size + 1;
+            int degree = edges.getDegree(node);
+            for(int slot = 0; slot < degree; slot++){
+                int neighbor = edges.getNeighbor(node, slot);
+                if(affectedMark[neighbor] != stamp 
+                        && nodeHeights[neighbor] < best - 1
+                        && hasSticks(node, slot)){
+                    best = nodeHeights[neighbor] + 1;
+                }
+            }
+            if(best <= size){
+                seeds[seedCount++] = ((long) best << 32) | node;
+            }
+        }
+        for(int node: affectedNodes){
+            if(journal != null){
+                journal.logHeight(node, nodeHeights[node]);
+            }
+            nodeHeights[node] = size + 1;
+        }
+        Arrays.sort(seeds, 0, seedCount);
+        
+        // Breadth-first search through the affected nodes, merging the sorted
+        // seeds with the queue so nodes are settled in order of height.
+        head = 0;
+        tail = 0;
+        int nextSeed = 0;
+        while(head < tail || nextSeed < seedCount){
+            int node;
+            int height;
+            if(head < tail && (nextSeed == seedCount || nodeHeights[
+                    repairQueue[head]] <= (int) (seeds[nextSeed] >>> 32))){
+                node = repairQueue[head++];
+                height = nodeHeights[node];
+            }
+            else{
+                node = (int) seeds[nextSeed];
+                height = (int) (seeds[nextSeed] >>> 32);
+                nextSeed++;
+            }
+            if(settledMark[node] == stamp){
+                continue;
+            }
+            settledMark[node] = stamp;
+            nodeHeights[node] = height;
+            int degree = edges.getDegree(node);
+            for(int slot = 0; slot < degree; slot++){
+                int neighbor = edges.getNeighbor(node, slot);
+                if(affectedMark[neighbor] == stamp 
+                        && settledMark[neighbor] != stamp
+                        && nodeHeights[neighbor] > height + 1
+                        && hasSticks(node, slot)){
+                    nodeHeights[neighbor] = height + 1;
+                    repairQueue[tail++] = neighbor;
+                }
+            }
+        }
+        
+        // Whatever the search could not reach has lost the ground. All of its
+        // neighbours are affected too, so each edge is counted once.
+        int redEdgesLost = 0;
+        int blueEdgesLost = 0;
+        for(int node: affectedNodes){
+            if(settledMark[node] == stamp){
+                continue;
+            }
+            nodeHeights[node] = size + 1;
+            for(int slot = edges.getDegree(node) - 1; slot >= 0; slot--){
+                int neighbor = edges.getNeighbor(node, slot);
+                int red = edges.getEdgesAt('r', node, slot);
+                int blue = edges.getEdgesAt('b', node, slot);
+                redEdgesLost += removeSticks('r', node, neighbor, red, red);
+                blueEdgesLost += removeSticks('b', node, neighbor, blue, blue);
+            }
+        }
+        layersStale = true;
+        if(timed){
+            Metrics.recordHeights(false, affected, System.nanoTime() - start);
+        }
+        return new int[]{redEdgesLost, blueEdgesLost};
+    }
+    
+    /**
+     * Removes sticks of one color between two vertices, keeping the position
+     * hashes up to date.
+     * @param color 'r' for red or 'b' for blue.
+     * @param i An integer between 0 and (size - 1) inclusive.
+     * @param j An integer between 0 and (size - 1) inclusive.
+     * @param sticks The number of sticks of that color between i and j.
+     * @param count The number of sticks to remove, at most sticks.
+     * @return The number of sticks removed.
+     */
+    private int removeSticks(char color, int i, int j, int sticks, int count){
+        int removed = edges.removeEdges(color, i, j, count);
+        if(removed > 0 && journal != null){
+            journal.logSticks(color, i, j, removed);
+        }
+        if(removed > 0){
+            positionHash ^= stickHash(HASH_SEED, i, j, color, sticks) 
+                    ^ stickHash(HASH_SEED, i, j, color, sticks - removed);
+            positionCheck ^= stickHash(CHECK_SEED, i, j, color, sticks) 
+                    ^ stickHash(CHECK_SEED, i, j, color, sticks - removed);
+        }
+        return removed;
+    }
+    
+    /**
+     * Finds the pseudorandom key for a number of sticks of one color between 
+     * two vertices. The key for no sticks is 0, so that empty pairs do not 
+     * contribute to the hash.
+     * @param seed The seed for the hash being updated.
+     * @param i An integer between 0 and (size - 1) inclusive.
+     * @param j An integer between 0 and (size - 1) inclusive.
+     * @param color 'r' for red or 'b' for blue.
+     * @param count A nonnegative number of sticks.
+     * @return A 64-bit key.
+     */
+    private static long stickHash(long seed, int i, int j, char color, 
+            int count){
+        if(count == 0){
+            return 0;
+        }
+        long pair = ((long) Math.min(i, j) << 32) | Math.max(i, j);
+        long z = mix(seed ^ pair);
+        return mix(z ^ (((long) count << 1) | (color == 'r' ? 0 : 1)));
+    }
+    
+    /**
+     * Scrambles the bits of a 64-bit integer, using the finalizer of the
+     * SplitMix64 generator.
+     * @param z Any long.
+     * @return The scrambled long.
+     */
+    private static long mix(long z){
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+    
+    /**
+     * Checks whether a neighbour slot of a node holds any sticks.
+     * @param node An integer between 0 and (size - 1) inclusive.
+     * @param slot An integer between 0 and (getDegree(node) - 1) inclusive.
+     * @return "true" if there is at least one red or blue stick.
+     */
+    private boolean hasSticks(int node, int slot){
+        return edges.getEdgesAt('r', node, slot) > 0 
+                || edges.getEdgesAt('b', node, slot) > 0;
+    }
+    
+    /**
+     * Rebuilds maxHeight and layers from nodeHeights, if they have been left
+     * stale.
+     */
+    protected void updateLayers(){
+        if(!layersStale){
+            return;
+        }
+        layers = new HeightLayers(nodeHeights);
+        maxHeight = layers.getMaxHeight();
+        layersStale = false;
+    }
+    
     /**
      * Creates a shallow copy of a two-dimensional integer array.
      * @param matrix The matrix to be copied.
@@ -218,12 +535,16 @@ public class Hackenbush {
         boolean anyBlue = false;
         int numBlue = 0;
         for(int i=0; i<size; i++){
-            for(int j = i; j<size; j++){
-                if(redGraph[i][j]>0){
+            int degree = edges.getDegree(i);
+            for(int slot = 0; slot < degree; slot++){
+                if(edges.getNeighbor(i, slot) < i){
+                    continue;
+                }
+                if(edges.getEdgesAt('r', i, slot)>0){
                     anyRed = true;
                     numRed += 1;
                 }
-                if(blueGraph[i][j]>0){
+                if(edges.getEdgesAt('b', i, slot)>0){
                     anyBlue = true;
                     numBlue += 1;
                 }
@@ -243,19 +564,164 @@ public class Hackenbush {
     }
     
     /**
-     * Produces a shallow copy of one of the adjacency matrices for the
-     * current Hackenbush game.
+     * Returns a 64-bit hash of the current position. Equal positions always
+     * have equal hashes, so together with getPositionCheck it can be used as
+     * a key for caching positions, with isSamePosition to rule out 
+     * collisions where they must be ruled out exactly.
+     * @return The hash of the current sticks.
+     */
+    public long getPositionHash(){
+        return positionHash;
+    }
+    
+    /**
+     * Returns a second 64-bit hash of the current position, independent of
+     * getPositionHash. Together the two form a 128-bit hash.
+     * @return The second hash of the current sticks.
+     */
+    public long getPositionCheck(){
+        return positionCheck;
+    }
+    
+    /**
+     * Checks whether another game has exactly the same sticks as this one,
+     * vertex for vertex. The solvers trust the 128-bit hash alone, so this is
+     * for callers that need a collision ruled out exactly. The hashes and 
+     * stick totals are compared first, so unequal positions are usually told
+     * apart in constant time, and otherwise each vertex's sticks in the other
+     * game are spread into scratch arrays and compared with its sticks here,
+     * in time linear in the vertices and sticks.
+     * @param other Another Hackenbush game.
+     * @return "true" if both games have the same number of sticks of each 
+     * color between every pair of vertices, "false" otherwise.
+     */
+    public boolean isSamePosition(Hackenbush other){
+        if(other == this){
+            return true;
+        }
+        if(other == null || other.size != size 
+                || other.positionHash != positionHash
+                || other.positionCheck != positionCheck
+                || other.edges.getEdgeTotal('r') != edges.getEdgeTotal('r')
+                || other.edges.getEdgeTotal('b') != edges.getEdgeTotal('b')){
+            return false;
+        }
+        int[] red = new int[size];
+        int[] blue = new int[size];
+        for(int i = 0; i < size; i++){
+            int otherDegree = other.edges.getDegree(i);
+            for(int slot = 0; slot < otherDegree; slot++){
+                int j = other.edges.getNeighbor(i, slot);
+                red[j] = other.edges.getEdgesAt('r', i, slot);
+                blue[j] = other.edges.getEdgesAt('b', i, slot);
+            }
+            boolean same = true;
+            int degree = edges.getDegree(i);
+            for(int slot = 0; slot < degree; slot++){
+                int j = edges.getNeighbor(i, slot);
+                if(edges.getEdgesAt('r', i, slot) != red[j] 
+                        || edges.getEdgesAt('b', i, slot) != blue[j]){
+                    same = false;
+                }
+                red[j] = 0;
+                blue[j] = 0;
+            }
+            for(int slot = 0; slot < otherDegree; slot++){
+                int j = other.edges.getNeighbor(i, slot);
+                if(red[j] != 0 || blue[j] != 0){
+                    same = false;
+                }
+            }
+            if(!same){
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Returns whether the game was found to be won by the last call to 
+     * gameState.
+     * @return "true" if only one color had sticks left, "false" otherwise.
+     */
+    public boolean isWon(){
+        return isWon;
+    }
+    
+    /**
+     * Produces an adjacency matrix for one color of the current Hackenbush 
+     * game. The matrix is built fresh from the stored edges, so it costs 
+     * size squared time and memory; prefer getEdgeCount and the neighbour 
+     * methods for large games.
      * @param color The character 'b' for Blue or 'r' for Red.
      * @return The red edges, blue edges, or null if a different color.
      */
     public int[][] getEdges(char color){
-        if(color == 'b'){
-            return cloneMatrix(blueGraph);
+        if(color != 'b' && color != 'r'){
+            return null;
         }
-        else if(color == 'r'){
-            return cloneMatrix(redGraph);
+        int[][] matrix = new int[size][size];
+        for(int i = 0; i < size; i++){
+            int degree = edges.getDegree(i);
+            for(int slot = 0; slot < degree; slot++){
+                matrix[i][edges.getNeighbor(i, slot)] = 
+                        edges.getEdgesAt(color, i, slot);
+            }
         }
-        return null;
+        return matrix;
+    }
+    
+    /**
+     * Returns the number of sticks of one color between two vertices.
+     * @param color The character 'b' for Blue or 'r' for Red.
+     * @param i An integer between 0 and (size - 1) inclusive.
+     * @param j An integer between 0 and (size - 1) inclusive.
+     * @return A nonnegative number of sticks, 0 for a different color.
+     */
+    public int getEdgeCount(char color, int i, int j){
+        return edges.getEdges(color, i, j);
+    }
+    
+    /**
+     * Returns the total number of sticks of one color.
+     * @param color The character 'b' for Blue or 'r' for Red.
+     * @return A nonnegative number of sticks, 0 for a different color.
+     */
+    public long getEdgeTotal(char color){
+        return edges.getEdgeTotal(color);
+    }
+    
+    /**
+     * Returns the number of neighbour slots of a vertex. Together with
+     * getNeighbor and getEdgeCountAt, this visits every stick touching the 
+     * vertex without building a matrix.
+     * @param node An integer between 0 and (size - 1) inclusive.
+     * @return A nonnegative number of slots.
+     */
+    public int getDegree(int node){
+        return edges.getDegree(node);
+    }
+    
+    /**
+     * Returns the vertex held in one of the neighbour slots of a vertex.
+     * @param node An integer between 0 and (size - 1) inclusive.
+     * @param slot An integer between 0 and (getDegree(node) - 1) inclusive.
+     * @return The neighbouring vertex, which is node itself for loops.
+     */
+    public int getNeighbor(int node, int slot){
+        return edges.getNeighbor(node, slot);
+    }
+    
+    /**
+     * Returns the number of sticks of one color held in one of the neighbour
+     * slots of a vertex.
+     * @param color The character 'b' for Blue or 'r' for Red.
+     * @param node An integer between 0 and (size - 1) inclusive.
+     * @param slot An integer between 0 and (getDegree(node) - 1) inclusive.
+     * @return A nonnegative number of sticks, 0 for a different color.
+     */
+    public int getEdgeCountAt(char color, int node, int slot){
+        return edges.getEdgesAt(color, node, slot);
     }
     
     /**
@@ -268,6 +734,16 @@ public class Hackenbush {
         return nodeHeights;
     }
     
+    /**
+     * Returns the nodes that are currently connected to the ground, grouped 
+     * by height. The returned object is not changed by later moves.
+     * @return The current HeightLayers.
+     */
+    public HeightLayers getLayers(){
+        updateLayers();
+        return layers;
+    }
+    
     /**
      * Creates and returns an array of pairs of integers, to be used for 
      * graphing the current Hackenbush.
@@ -278,6 +754,7 @@ public class Hackenbush {
      */
     public int[][] getNodeCoords(int canvasWidth, int canvasHeight){
         int[][] nodeCoords = new int[size][2];
+        updateLayers();
         if(maxHeight == 0){
             nodeCoords[0][0] = canvasWidth/2;
             nodeCoords[0][1] = canvasHeight;
@@ -287,12 +764,12 @@ public class Hackenbush {
         double xCoord;
         double yCoord;
         for(int i = 0; i<=maxHeight; i++){
-            nodesAtHeightI = nodesByHeight[i].size();
+            nodesAtHeightI = layers.getLayerSize(i);
             yCoord = canvasHeight - canvasHeight*i/(1.5*maxHeight);
             for(int j = 0; j<nodesAtHeightI; j++){
                 xCoord = canvasWidth * ((j + 0.5) / (nodesAtHeightI));
-                nodeCoords[nodesByHeight[i].get(j)][0] = (int) xCoord;
-                nodeCoords[nodesByHeight[i].get(j)][1] = (int) yCoord;
+                nodeCoords[layers.getNode(i, j)][0] = (int) xCoord;
+                nodeCoords[layers.getNode(i, j)][1] = (int) yCoord;
             }
         }
         return nodeCoords;
@@ -315,35 +792,46 @@ public class Hackenbush {
      * @return "true" if the graph is a tree, "false" otherwise
      */
     public boolean isTree(){
-        /*
-        Peforms a breadth-first search of the graph to determine that each node
-        is hit at most once, ensuring there are no cycles in the graph.
-        */
         if(size == 0){
             return false;
         }
-        boolean[] nodesHit = new boolean[size];
-        LinkedList<Integer> nextNodes = new LinkedList();
-        nextNodes.add(0);
-        nodesHit[0] = true;
-        while(nextNodes.size() > 0){
-            int currentNode = nextNodes.removeFirst();
-            for(int i = currentNode; i < size; i++){
-                if((redGraph[currentNode][i] + 
-                        blueGraph[currentNode][i] == 1)){
-                    if(!nodesHit[i]) {
-                        nextNodes.add(i);
-                        nodesHit[i] = true;
-                    }
-                    else return false;
-                }
-                else if((redGraph[currentNode][i] + 
-                        blueGraph[currentNode][i] > 1)){
-                    return false;
+        return HeightLayers.isTree(edges, 0);
+    }
+    
+    /**
+     * Lists every move a player has, together with the value of the position
+     * each move leaves, best first for that player. A tree is valued along 
+     * the path below each cut; any other position has each move made and 
+     * taken back on one copy of the game, which is solved in between, with
+     * one transposition table shared between the moves. The game itself is 
+     * not changed.
+     * @param color 'r' for red or 'b' for blue
+     * @return A list of MoveValues, empty if the player has no moves.
+     */
+    public List<MoveValue> rankMoves(char color){
+        if(isWon || size == 0){
+            return new ArrayList<>();
+        }
+        if(isTree()){
+            return new CompactHackentree(this).rankMoves(color);
+        }
+        List<MoveValue> moves = new ArrayList<>();
+        HackenbushSolver solver = new HackenbushSolver();
+        Hackenbush option = new Hackenbush(this);
+        for(int i = 0; i < size; i++){
+            int degree = edges.getDegree(i);
+            for(int slot = 0; slot < degree; slot++){
+                int j = edges.getNeighbor(i, slot);
+                if(j < i || edges.getEdgesAt(color, i, slot) == 0){
+                    continue;
                 }
+                option.move(color, i, j);
+                moves.add(new MoveValue(color, i, j, solver.solve(option)));
+                option.unmove();
             }
         }
-        return true;
+        MoveValue.sortBestFirst(moves, color);
+        return moves;
     }
     
     /**
@@ -361,37 +849,126 @@ public class Hackenbush {
      * if invalid input was received.
      */
     public String move(char color, int i, int j){
-        if(redGraph == null || blueGraph == null){
+        if(edges == null){
             return "The Hackenbush has not been appropriatedly initialized.";
         }
+        boolean timed = Metrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
         int redEdgesLost = 0;
         int blueEdgesLost = 0;
         if(color == 'r'){
-            if(redGraph[i][j] == 0){
+            int sticks = edges.getEdges('r', i, j);
+            if(sticks == 0){
                 return "Not a valid move.";
             }
-            redEdgesLost += 1;
-            redGraph[i][j] -= 1;
-            if(i != j){
-                redGraph[j][i] -= 1;
-            }
+            startMove(color, i, j);
+            redEdgesLost += removeSticks('r', i, j, sticks, 1);
         }
         else if(color == 'b'){
-            if(blueGraph[i][j] == 0){
+            int sticks = edges.getEdges('b', i, j);
+            if(sticks == 0){
                 return "Not a valid move.";
             }
-            blueEdgesLost += 1;
-            blueGraph[i][j] -= 1;
-            if(i != j){
-                blueGraph[j][i] -= 1;
-            }
+            startMove(color, i, j);
+            blueEdgesLost += removeSticks('b', i, j, sticks, 1);
         }
-        int[] edgesLost = cleanUpDetached();
+        int[] edgesLost = repairAfterCut(i, j);
         redEdgesLost += edgesLost[0];
         blueEdgesLost += edgesLost[1];
+        if(timed){
+            Metrics.recordMove(redEdgesLost + blueEdgesLost - edgesLost[0] 
+                    - edgesLost[1], edgesLost[0] + edgesLost[1], 
+                    System.nanoTime() - start);
+        }
         //return "This move removed " + redEdgesLost + " red sticks and " + 
         //        blueEdgesLost + " blue sticks. \n" + gameState(color);
         return "This move removed " + redEdgesLost + " red sticks and " + 
                 blueEdgesLost + " blue sticks.";
     };
+    
+    /**
+     * Opens the journal record of a move about to be made, and forgets any 
+     * moves that were taken back, unless this move is one of them being 
+     * redone.
+     * @param color 'r' for red or 'b' for blue
+     * @param i An integer between 0 and (size - 1) inclusive.
+     * @param j An integer between 0 and (size - 1) inclusive.
+     */
+    private void startMove(char color, int i, int j){
+        if(journal == null){
+            journal = new MoveJournal();
+        }
+        journal.begin(color, i, j, positionHash, positionCheck, isWon);
+        if(!redoing){
+            journal.clearRedo();
+        }
+    }
+    
+    /**
+     * Takes back the last move, putting back the stick it cut and every stick
+     * it left detached. This takes time proportional to what the move 
+     * removed, and the move can be made again by redo().
+     * @return "true" if there was a move to take back.
+     */
+    public boolean unmove(){
+        MoveJournal.Move move = journal == null ? null 
+                : journal.undo(edges, nodeHeights);
+        if(move == null){
+            return false;
+        }
+        positionHash = move.hash;
+        positionCheck = move.check;
+        isWon = move.won;
+        layersStale = true;
+        return true;
+    }
+    
+    /**
+     * Makes again the last move taken back by unmove(). Making any other move
+     * forgets the moves that were taken back.
+     * @return "true" if there was a move to redo.
+     */
+    public boolean redo(){
+        MoveJournal.Move move = journal == null ? null : journal.nextRedo();
+        if(move == null){
+            return false;
+        }
+        journal.popRedo();
+        redoing = true;
+        move(move.color, move.i, move.j);
+        redoing = false;
+        return true;
+    }
+    
+    /**
+     * Returns the number of moves that unmove() can take back.
+     * @return A nonnegative integer.
+     */
+    public int getMoveCount(){
+        return journal == null ? 0 : journal.getMoveCount();
+    }
+    
+    /**
+     * Returns the number of moves that redo() can make again.
+     * @return A nonnegative integer.
+     */
+    public int getRedoCount(){
+        return journal == null ? 0 : journal.getRedoCount();
+    }
+    
+    /**
+     * Returns the record of the last move, which unmove() would take back.
+     * @return The record, or null if there is none.
+     */
+    MoveJournal.Move getLastMove(){
+        return journal == null ? null : journal.lastMove();
+    }
+    
+    /**
+     * Lists every vertex at the end of a stick the last move removed.
+     * @return An array of vertices, possibly with repeats.
+     */
+    int[] getLastMoveVertices(){
+        return journal == null ? new int[0] : journal.lastMoveVertices();
+    }
 }
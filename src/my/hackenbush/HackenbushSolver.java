@@ -0,0 +1,444 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.hackenbush;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import my.combinatorialgame.GameValue;
+
+/**
+ * HackenbushSolver finds the exact value of any Red-Blue Hackenbush position,
+ * including those with cycles, loops and multiple edges, by searching over the
+ * moves available to each player. Blue plays Left and Red plays Right, so 
+ * positive values favor Blue.
+ * 
+ * Positions are first split into their components joined only at the ground,
+ * whose values add. Components that are trees are valued directly by 
+ * Hackentree. In any other component, the branches hanging from each vertex, 
+ * such as trees and loops, are valued on their own and replaced by a single 
+ * stalk of the same value, which does not change the value of the whole. What 
+ * is left is valued as the simplest number between its best Left and best 
+ * Right options. Those values, and the values of every option reached, are
+ * stored in a ValueCache keyed on the position hash and check kept by
+ * Hackenbush, so that no position is searched twice by one solver while the
+ * cache has room for it. Components
+ * are renumbered into their CanonicalForm before they are looked up, so that
+ * the same shape reached with its vertices numbered differently is only 
+ * searched once. Solvers running on different threads may share a 
+ * SharedValueCache, which is checked when a position is not in the solver's
+ * own cache and given every value the solver stores. A solver may also be 
+ * given a PersistentTable, which is 
+ * checked for every component before it is searched and given the value of
+ * every component searched, so that later runs can reuse them.
+ * @author Madeleine Bulkow
+ */
+public class HackenbushSolver {
+    
+    /**
+     * The number of bytes a solver's cache may take unless it is given 
+     * another budget.
+     */
+    public static final long DEFAULT_CACHE_BYTES = 64L << 20;
+    
+    private final ValueCache table;
+    private long positionsSearched;
+    private final boolean canonicalKeys;
+    private final SharedValueCache shared;
+    private final PersistentTable disk;
+    private long sharedHits;
+    private long diskHits;
+    
+    /**
+     * Constructor
+     */
+    public HackenbushSolver(){
+        this(true);
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param canonicalKeys Whether components are put into canonical form
+     * before they are looked up. Turning this off is only useful to measure
+     * what it saves.
+     */
+    public HackenbushSolver(boolean canonicalKeys){
+        this(canonicalKeys, null);
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param canonicalKeys Whether components are put into canonical form
+     * before they are looked up.
+     * @param disk A table shared with other solvers and runs, or null.
+     */
+    public HackenbushSolver(boolean canonicalKeys, PersistentTable disk){
+        this(canonicalKeys, disk, DEFAULT_CACHE_BYTES);
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param canonicalKeys Whether components are put into canonical form
+     * before they are looked up.
+     * @param disk A table shared with other solvers and runs, or null.
+     * @param cacheBytes The most bytes the in-memory cache may take.
+     */
+    public HackenbushSolver(boolean canonicalKeys, PersistentTable disk, 
+            long cacheBytes){
+        this(canonicalKeys, disk, cacheBytes, null);
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param canonicalKeys Whether components are put into canonical form
+     * before they are looked up.
+     * @param disk A table shared with other solvers and runs, or null.
+     * @param cacheBytes The most bytes the solver's own cache may take.
+     * @param shared A cache shared with solvers on other threads, or null.
+     */
+    public HackenbushSolver(boolean canonicalKeys, PersistentTable disk, 
+            long cacheBytes, SharedValueCache shared){
+        this.canonicalKeys = canonicalKeys;
+        this.shared = shared;
+        this.disk = disk;
+        this.table = new ValueCache(cacheBytes);
+    }
+    
+    /**
+     * Finds the value of a Hackenbush position. The position itself is not
+     * changed.
+     * @param position A Hackenbush game.
+     * @return A GameValue, positive if Blue is ahead and negative if Red is.
+     */
+    public GameValue solve(Hackenbush position){
+        if(!Metrics.isEnabled()){
+            return lookUpOrSolve(position);
+        }
+        long start = System.nanoTime();
+        long searched = positionsSearched;
+        long hits = table.getHits();
+        long misses = table.getMisses();
+        GameValue value = lookUpOrSolve(position);
+        Metrics.recordSearch(positionsSearched - searched, 
+                table.getHits() - hits, table.getMisses() - misses, 
+                System.nanoTime() - start);
+        return value;
+    }
+    
+    /**
+     * Finds the value of a Hackenbush position in the cache, or by solving 
+     * it if it is not there.
+     * @param position A Hackenbush game.
+     * @return A GameValue, positive if Blue is ahead and negative if Red is.
+     */
+    private GameValue lookUpOrSolve(Hackenbush position){
+        GameValue value = lookUp(position);
+        if(value != null){
+            return value;
+        }
+        return solve(position.edges);
+    }
+    
+    /**
+     * Returns the number of positions stored in the cache.
+     * @return A nonnegative integer.
+     */
+    public int getTableSize(){
+        return table.size();
+    }
+    
+    /**
+     * Returns the number of positions searched so far, not counting those 
+     * found in the transposition table.
+     * @return A nonnegative integer.
+     */
+    public long getPositionsSearched(){
+        return positionsSearched;
+    }
+    
+    /**
+     * Returns the number of times a position was found in the cache.
+     * @return A nonnegative integer.
+     */
+    public long getTableHits(){
+        return table.getHits();
+    }
+    
+    /**
+     * Returns the cache the solver keeps its values in, along with its hit,
+     * miss and eviction counts.
+     * @return The solver's ValueCache.
+     */
+    public ValueCache getCache(){
+        return table;
+    }
+    
+    /**
+     * Finds the value of a position by adding the values of its components.
+     * @param edges The edges of the position, with vertex 0 as the ground.
+     * @return The value of the position.
+     */
+    GameValue solve(EdgeStore edges){
+        List<GameValue> values = new ArrayList<>();
+        if(edges.getSize() > 0){
+            values.add(new GameValue(edges.getEdges('b', 0, 0) 
+                    - edges.getEdges('r', 0, 0), 1));
+        }
+        for(EdgeStore component: splitAtGround(edges)){
+            values.add(solveComponent(component));
+        }
+        return new GameValue(values);
+    }
+    
+    /**
+     * Finds the value of a single component, searching it if it has not been 
+     * seen before.
+     * @param component The edges of a component joined to the ground.
+     * @return The value of the component.
+     */
+    private GameValue solveComponent(EdgeStore component){
+        if(HeightLayers.isTree(component, 0)){
+            return new Hackentree(component).getGameValue();
+        }
+        component = Simplification.collapseBranches(component, this);
+        if(HeightLayers.isTree(component, 0)){
+            return new Hackentree(component).getGameValue();
+        }
+        Hackenbush position = canonicalKeys 
+                ? new CanonicalForm(component).getPosition() 
+                : new Hackenbush(component);
+        GameValue value = lookUp(position);
+        if(value != null){
+            return value;
+        }
+        if(disk != null){
+            value = disk.getValue(position.getPositionHash(), 
+                    position.getPositionCheck());
+            if(value != null){
+                diskHits++;
+                store(position, value);
+                return value;
+            }
+        }
+        positionsSearched++;
+        GameValue bestLeft = bestOption(position, 'b');
+        GameValue bestRight = bestOption(position, 'r');
+        value = GameValue.simplestBetween(bestLeft, bestRight);
+        store(position, value);
+        if(disk != null){
+            disk.putValue(position.getPositionHash(), 
+                    position.getPositionCheck(), value);
+        }
+        return value;
+    }
+    
+    /**
+     * Finds the best value a player can reach in one move. Every move is 
+     * made and taken back on a single copy of the component.
+     * @param component A component joined to the ground.
+     * @param color 'b' for Blue, who maximises, or 'r' for Red, who minimises.
+     * @return The best value, or null if the player has no moves.
+     */
+    private GameValue bestOption(Hackenbush component, char color){
+        GameValue best = null;
+        Hackenbush option = null;
+        int size = component.getSize();
+        for(int i = 0; i < size; i++){
+            int degree = component.getDegree(i);
+            for(int slot = 0; slot < degree; slot++){
+                int j = component.getNeighbor(i, slot);
+                if(j < i || component.getEdgeCountAt(color, i, slot) == 0){
+                    continue;
+                }
+                if(option == null){
+                    option = new Hackenbush(component);
+                }
+                option.move(color, i, j);
+                GameValue value = lookUp(option);
+                if(value == null){
+                    value = solve(option.edges);
+                    store(option, value);
+                }
+                option.unmove();
+                if(best == null || (color == 'b' && value.compareTo(best) > 0)
+                        || (color == 'r' && value.compareTo(best) < 0)){
+                    best = value;
+                }
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Returns the number of positions whose values were found in the 
+     * SharedValueCache after missing the solver's own cache.
+     * @return A nonnegative integer.
+     */
+    public long getSharedHits(){
+        return sharedHits;
+    }
+    
+    /**
+     * Returns the number of components whose values were found in the 
+     * PersistentTable rather than searched.
+     * @return A nonnegative integer.
+     */
+    public long getDiskHits(){
+        return diskHits;
+    }
+    
+    /**
+     * Looks up the value of a position in the cache, and then in the shared
+     * cache if there is one.
+     * @param position A Hackenbush game.
+     * @return The stored value, or null if the position is not stored.
+     */
+    private GameValue lookUp(Hackenbush position){
+        long hash = position.getPositionHash();
+        long check = position.getPositionCheck();
+        GameValue value = table.get(hash, check);
+        if(value == null && shared != null){
+            value = shared.get(hash, check);
+            if(value != null){
+                sharedHits++;
+                table.put(hash, check, value);
+            }
+        }
+        return value;
+    }
+    
+    /**
+     * Stores the value of a position in the cache and in the shared cache if
+     * there is one.
+     * @param position A Hackenbush game.
+     * @param value Its value.
+     */
+    private void store(Hackenbush position, GameValue value){
+        long hash = position.getPositionHash();
+        long check = position.getPositionCheck();
+        table.put(hash, check, value);
+        if(shared != null){
+            shared.put(hash, check, value);
+        }
+    }
+    
+    /**
+     * Finds the colors of the shortest stalk with a given value, listed from 
+     * the ground up. Its integer part is a run of sticks of one color and 
+     * each binary digit after the point adds one more stick.
+     * @param value A GameValue whose denominator is a power of two.
+     * @return An array of 'r' and 'b' characters, empty for a value of 0.
+     */
+    static char[] stalkColors(GameValue value){
+        BigInteger num = value.getBigNum().abs();
+        int bits = value.getExponent();
+        char up = value.signum() < 0 ? 'r' : 'b';
+        char down = value.signum() < 0 ? 'b' : 'r';
+        int whole = num.shiftRight(bits).intValueExact();
+        if(bits == 0){
+            char[] colors = new char[whole];
+            Arrays.fill(colors, up);
+            return colors;
+        }
+        char[] colors = new char[whole + 1 + bits];
+        Arrays.fill(colors, 0, whole + 1, up);
+        colors[whole + 1] = down;
+        for(int k = 1; k < bits; k++){
+            colors[whole + 1 + k] = num.testBit(bits - k) ? up : down;
+        }
+        return colors;
+    }
+    
+    /**
+     * Splits a position into the parts that meet only at the ground. Each part
+     * is renumbered in breadth-first order with the ground as vertex 0. Loops
+     * at the ground are left out, since each is worth exactly one move.
+     * @param edges The edges of the position, with vertex 0 as the ground.
+     * @return A list of new EdgeStores, one per part.
+     */
+    static List<EdgeStore> splitAtGround(EdgeStore edges){
+        List<EdgeStore> components = new ArrayList<>();
+        int size = edges.getSize();
+        if(size == 0){
+            return components;
+        }
+        int[] label = new int[size];
+        Arrays.fill(label, -1);
+        int[] queue = new int[size];
+        int groundDegree = edges.getDegree(0);
+        for(int start = 0; start < groundDegree; start++){
+            int first = edges.getNeighbor(0, start);
+            if(edges.getEdgesAt('r', 0, start) 
+                    + edges.getEdgesAt('b', 0, start) == 0){
+                continue;
+            }
+            if(first == 0 || label[first] != -1){
+                continue;
+            }
+            // Collect the component by a breadth-first search that never 
+            // passes through the ground.
+            int head = 0;
+            int tail = 0;
+            label[first] = 1;
+            queue[tail++] = first;
+            while(head < tail){
+                int node = queue[head++];
+                int degree = edges.getDegree(node);
+                for(int slot = 0; slot < degree; slot++){
+                    int neighbor = edges.getNeighbor(node, slot);
+                    if(neighbor != 0 && label[neighbor] == -1
+                            && edges.getEdgesAt('r', node, slot) 
+                            + edges.getEdgesAt('b', node, slot) > 0){
+                        label[neighbor] = tail + 1;
+                        queue[tail++] = neighbor;
+                    }
+                }
+            }
+            SparseEdgeStore component = new SparseEdgeStore(tail + 1);
+            for(int q = 0; q < tail; q++){
+                int node = queue[q];
+                int degree = edges.getDegree(node);
+                for(int slot = 0; slot < degree; slot++){
+                    int neighbor = edges.getNeighbor(node, slot);
+                    int other = neighbor == 0 ? 0 : label[neighbor];
+                    if(other != 0 && other < label[node]){
+                        continue;
+                    }
+                    component.addEdges('r', label[node], other, 
+                            edges.getEdgesAt('r', node, slot));
+                    component.addEdges('b', label[node], other, 
+                            edges.getEdgesAt('b', node, slot));
+                }
+            }
+            components.add(component);
+        }
+        return components;
+    }
+}
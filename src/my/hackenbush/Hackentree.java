@@ -24,16 +24,25 @@
 
 package my.hackenbush;
 
+import java.util.BitSet;
+import java.util.List;
+import my.combinatorialgame.GameValue;
+
 /**
  * A specific case of Hackenbush created under the assumption that the current
  * graph is a tree. Contains a data structure representing this tree,
  * and a method to print out the value of the current game.
+ * 
+ * The tree is kept as a CompactHackentree and stays bound to the position: 
+ * each move cuts the matching branch out of the tree, so that only the values
+ * on the path from the cut down to the root have to be recomputed.
  * @author Madeleine Bulkow
  */
 public class Hackentree extends Hackenbush{
     
     public boolean isTree;
-    private HackentreeNode<Integer> root;
+    private CompactHackentree tree;
+    private final BitSet cutInTree = new BitSet();
     
     /**
      * Constructor
@@ -46,11 +55,18 @@ public class Hackentree extends Hackenbush{
      */
     public Hackentree(int size, int[][] redEdges, int[][] blueEdges){
         super(size, redEdges, blueEdges);
-        isTree = super.isTree();
-        if(isTree){
-            root = new HackentreeNode(0);
-            generateSubtree(root);
-        }
+        buildTree();
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param edges The red and blue edges of the game, with vertex 0 as the
+     * ground.
+     */
+    public Hackentree(EdgeStore edges){
+        super(edges);
+        buildTree();
     }
     
     /**
@@ -59,30 +75,103 @@ public class Hackentree extends Hackenbush{
      * @param hackenbush A Hackenbush object.
      */
     public Hackentree(Hackenbush hackenbush){
-        this(hackenbush.size,hackenbush.redGraph,hackenbush.blueGraph);
+        this(hackenbush.edges);
+    }
+    
+    /**
+     * Checks whether the game is a tree, and if so builds the tree data 
+     * structure for it.
+     */
+    private void buildTree(){
+        isTree = super.isTree();
+        tree = isTree ? new CompactHackentree(edges, nodeHeights) : null;
     }
     
     /**
-     * Generates the part of the tree data structure representing all nodes
-     * and edges rooted at the given element.
-     * @param subtreeRoot 
+     * Returns the value of the current game.
+     * @return A GameValue, or null if the game is not a tree.
      */
-    private void generateSubtree(HackentreeNode<Integer> subtreeRoot){
-        if(!isTree) return;
-        int subtreeRootIndex = subtreeRoot.getData();
-        HackentreeNode<Integer> currentChild;
-        for(int i = 0; i<size; i++){
-            if(redGraph[subtreeRootIndex][i] == 1 && 
-                    nodeHeights[subtreeRootIndex] < nodeHeights[i]){
-                currentChild = subtreeRoot.addChild(i,'r');
-                generateSubtree(currentChild);
-            }
-            else if(blueGraph[subtreeRootIndex][i] == 1 && 
-                    nodeHeights[subtreeRootIndex] < nodeHeights[i]){
-                currentChild = subtreeRoot.addChild(i,'b');
-                generateSubtree(currentChild);
-            }
+    public GameValue getGameValue(){
+        if(!isTree){
+            return null;
+        }
+        return tree.getGameValue();
+    }
+    
+    /**
+     * Builds the tree as HackentreeNode objects, each holding its vertex. The
+     * nodes are a copy and do not follow later moves.
+     * @return The root node, or null if the game is not a tree.
+     */
+    public HackentreeNode<Integer> getRoot(){
+        if(!isTree){
+            return null;
+        }
+        return tree.toHackentreeNode();
+    }
+    
+    /**
+     * Lists every move a player has as Hackenbush.rankMoves does, using the
+     * tree already built when the game is a tree.
+     * @param color 'r' for red or 'b' for blue
+     * @return A list of MoveValues, empty if the player has no moves.
+     */
+    @Override
+    public List<MoveValue> rankMoves(char color){
+        if(isTree && !isWon){
+            return tree.rankMoves(color);
+        }
+        return super.rankMoves(color);
+    }
+    
+    /**
+     * Makes a move as Hackenbush.move does. If the game is a tree, the branch
+     * above the cut stick is dropped from the tree; otherwise the game is 
+     * checked again in case the move has left a tree.
+     * @param color 'r' for red or 'b' for blue
+     * @param i An integer between 0 and (size - 1) inclusive.
+     * @param j An integer between 0 and (size - 1) inclusive.
+     * @return A message about the number of edges removed or an error message
+     * if invalid input was received.
+     */
+    @Override
+    public String move(char color, int i, int j){
+        boolean valid = edges != null && edges.getEdges(color, i, j) > 0;
+        if(valid && isTree){
+            tree.cut(tree.getParent(j) == i ? j : i);
+        }
+        boolean cut = valid && isTree;
+        String message = super.move(color, i, j);
+        if(valid){
+            cutInTree.set(getMoveCount() - 1, cut);
+        }
+        if(valid && !isTree){
+            buildTree();
+        }
+        return message;
+    }
+    
+    /**
+     * Takes back the last move as Hackenbush.unmove does. If the move was cut
+     * from the tree, the branch is put back into it; otherwise the game is 
+     * checked again, since putting back a stick may have closed a cycle.
+     * @return "true" if there was a move to take back.
+     */
+    @Override
+    public boolean unmove(){
+        MoveJournal.Move move = getLastMove();
+        if(move == null){
+            return false;
+        }
+        boolean cut = cutInTree.get(getMoveCount() - 1);
+        super.unmove();
+        if(cut){
+            tree.uncut(move.i, move.j, move.color);
+        }
+        else{
+            buildTree();
         }
+        return true;
     }
     
     /**
@@ -95,7 +184,7 @@ public class Hackentree extends Hackenbush{
     public String gameState(char lastMove){
         String message = super.gameState(lastMove);
         if(isTree && !isWon){
-            return "Current game value is " + root.printGameValue();
+            return "Current game value is " + tree.getGameValue().printValue();
         }
         else{
             return message;
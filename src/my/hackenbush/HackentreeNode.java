@@ -24,8 +24,11 @@
 
 package my.hackenbush;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import my.combinatorialgame.GameValue;
+import my.combinatorialgame.ValueAccumulator;
 
 /**
  * The class HackentreeNode recursively defines a tree in Red-Blue Hackenbush
@@ -33,7 +36,9 @@ import my.combinatorialgame.GameValue;
  * that vertex, and lists of its red and blue children.
  * 
  * It also contains a field for, and methods to obtain, the value of the game 
- * represented by the tree.
+ * represented by the tree. Values are cached, and removing a child only marks
+ * the path from the child's parent down to the root as needing to be 
+ * recomputed.
  * 
  * @author Madeleine Bulkow
  * @param <T> The type of data held in each node.
@@ -45,6 +50,7 @@ public class HackentreeNode<T> {
     private LinkedList<HackentreeNode<T>> redChildren;
     private LinkedList<HackentreeNode<T>> blueChildren;
     private GameValue gameValue;
+    private boolean dirty = true;
     
     /**
      * Constructor for root node
@@ -93,9 +99,47 @@ public class HackentreeNode<T> {
             }
             blueChildren.add(child);
         }
+        markDirty();
         return child;
     }
     
+    /**
+     * Removes a child, and everything rooted at it, from the current node's
+     * children, and marks the values along the path to the root as stale.
+     * @param child A child of the current node.
+     * @return True if the child was found and removed.
+     */
+    public boolean removeChild(HackentreeNode<T> child){
+        LinkedList<HackentreeNode<T>> children = listChildren(child.stemColor);
+        if(children == null || !children.remove(child)){
+            return false;
+        }
+        if(children.isEmpty()){
+            if(child.stemColor == 'r'){
+                redChildren = null;
+            }
+            else{
+                blueChildren = null;
+            }
+        }
+        child.parent = null;
+        markDirty();
+        return true;
+    }
+    
+    /**
+     * Marks the value of the current node and of every node below it on the 
+     * path to the root as needing to be recomputed. A node is only ever stale
+     * when its parent is, so the walk stops at the first stale node.
+     */
+    public void markDirty(){
+        HackentreeNode<T> node = this;
+        while(node != null && !node.dirty){
+            node.dirty = true;
+            node = node.parent;
+        }
+    }
+    
     /**
      * Returns the data contained in the current node.
      * @return the data...
@@ -121,47 +165,95 @@ public class HackentreeNode<T> {
     
     /**
      * Finds the value of the game represented, consisting of the game rooted at
-     * the node and the stem it sits on.
+     * the node and the stem it sits on. Only nodes whose values are stale are
+     * recomputed. The stale nodes are listed parents first with an explicit
+     * stack and then valued in the reverse order, so that every child is 
+     * valued before its parent without recursion, however tall the tree.
      * @return A GameValue for the represented tree.
      */
     private GameValue findGameValue(){
-        if(gameValue == null){
-            gameValue = new GameValue(0,1);
+        if(!dirty){
+            return gameValue;
         }
-        if(redChildren == null && blueChildren == null){
-            if(stemColor == 'r') gameValue.update(-1,1);
-            else if(stemColor == 'b') gameValue.update(1,1);
-            else{
-                gameValue.update(0,1);
-            }
+        ArrayList<HackentreeNode<T>> order = new ArrayList<>();
+        ArrayDeque<HackentreeNode<T>> stack = new ArrayDeque<>();
+        stack.push(this);
+        while(!stack.isEmpty()){
+            HackentreeNode<T> node = stack.pop();
+            order.add(node);
+            pushStale(node.redChildren, stack);
+            pushStale(node.blueChildren, stack);
         }
-        else{
-            GameValue childrenValue = new GameValue(getChildValues());
-            if(stemColor == 'r'){
-                int n = 1;
-                while(childrenValue.getNum() >= (n - 1)*childrenValue.getDen()){
-                    n++;
-                }
-                long newDen = (long) Math.pow(2, n-1);
-                long newNum = childrenValue.getNum() - n * childrenValue.getDen();
-                newDen *= childrenValue.getDen();
-                gameValue.update(newNum, newDen);
+        boolean timed = Metrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        ValueAccumulator sum = new ValueAccumulator();
+        for(int k = order.size() - 1; k >= 0; k--){
+            order.get(k).valueFromChildren(sum);
+        }
+        if(timed){
+            Metrics.recordValuation(order.size(), System.nanoTime() - start);
+        }
+        return gameValue;
+    }
+    
+    /**
+     * Pushes the children whose values are stale onto a stack.
+     * @param children A list of children, or null.
+     * @param stack The stack of nodes still to be listed.
+     */
+    private static <T> void pushStale(LinkedList<HackentreeNode<T>> children,
+            ArrayDeque<HackentreeNode<T>> stack){
+        if(children == null){
+            return;
+        }
+        for(HackentreeNode<T> child: children){
+            if(child.dirty){
+                stack.push(child);
             }
-            else if(stemColor == 'b'){
-                int n = 1;
-                while(childrenValue.getNum() <= (1 - n)*childrenValue.getDen()){
-                    n++;
-                }
-                long newDen = (long) myTwoPow(n - 1);
-                long newNum = childrenValue.getNum() + n * childrenValue.getDen();
-                newDen *= childrenValue.getDen();
-                gameValue.update(newNum, newDen);
+        }
+    }
+    
+    /**
+     * Recomputes the value of the node from the cached values of its 
+     * children, which must all be up to date.
+     * @param sum An accumulator to add up the children in. Its contents are 
+     * overwritten.
+     */
+    private void valueFromChildren(ValueAccumulator sum){
+        sum.reset();
+        if(redChildren != null){
+            for(HackentreeNode<T> redChild: redChildren){
+                sum.add(redChild.gameValue);
             }
-            else{
-                gameValue = childrenValue;
+        }
+        if(blueChildren != null){
+            for(HackentreeNode<T> blueChild: blueChildren){
+                sum.add(blueChild.gameValue);
             }
         }
-        return gameValue;
+        if(stemColor == 'r' || stemColor == 'b'){
+            addStem(stemColor, sum);
+        }
+        gameValue = sum.toGameValue();
+        dirty = false;
+    }
+    
+    /**
+     * Replaces the value of a game by the value of a single stem with that
+     * game sitting on top of it.
+     * @param stemColor 'r' for a red stem or 'b' for a blue stem.
+     * @param sum The value of the game sitting on the stem, overwritten with 
+     * the value of the stem and everything above it.
+     */
+    static void addStem(char stemColor, ValueAccumulator sum){
+        if(stemColor == 'r'){
+            long n = Math.max(1, sum.floor() + 2);
+            sum.add(-n).halve(Math.toIntExact(n - 1));
+        }
+        else{
+            long n = Math.max(1, 2 - sum.ceil());
+            sum.add(n).halve(Math.toIntExact(n - 1));
+        }
     }
     
     /**
@@ -172,12 +264,12 @@ public class HackentreeNode<T> {
         LinkedList<GameValue> values = new LinkedList<>();
         if(redChildren != null){
             for(HackentreeNode<T> redChild: redChildren){
-                values.add(redChild.findGameValue());
+                values.add(redChild.getGameValue());
             }
         }
         if(blueChildren != null){
             for(HackentreeNode<T> blueChild: blueChildren){
-                values.add(blueChild.findGameValue());
+                values.add(blueChild.getGameValue());
             }
         }
         return values;
@@ -201,24 +293,11 @@ public class HackentreeNode<T> {
     }
     
     /**
-     * A utility function to quickly take powers of two.
-     * @param n A nonnegative integer to which to raise two.
-     * @return A long integer, two raised to the nth power.
+     * Finds the current value of the tree.
+     * @return A GameValue for the represented tree.
      */
-    private long myTwoPow(int n){
-        if(n == 0){
-            return 1;
-        }
-        else if(n == 1){
-            return 2;
-        }
-        else{
-            int k = n/2;
-            int r = n - 2*k;
-            long bigPow = myTwoPow(k);
-            long littlePow = myTwoPow(r);
-            return bigPow*bigPow*littlePow;
-        }
+    public GameValue getGameValue(){
+        return findGameValue();
     }
     
     /**
@@ -227,7 +306,6 @@ public class HackentreeNode<T> {
      * @return A string containing the current value of the tree.
      */
     public String printGameValue(){
-        findGameValue();
-        return gameValue.printValue();
+        return getGameValue().printValue();
     }
 }
@@ -0,0 +1,210 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.hackenbush;
+
+/**
+ * HeightLayers groups the vertices of a Hackenbush graph by height, the length
+ * of the shortest path from each vertex to the ground. It also holds the 
+ * breadth-first searches that find those heights and test for trees, which 
+ * work on any EdgeStore in time proportional to its vertices and edges.
+ * 
+ * The searches use plain int arrays as queues and follow every neighbour slot,
+ * so the results do not depend on how the vertices are numbered.
+ * @author Madeleine Bulkow
+ */
+public class HeightLayers {
+    
+    private final int maxHeight;
+    private final int[] layerStart;
+    private final int[] layerNodes;
+    
+    /**
+     * Constructor. Groups vertices by the given heights; any height greater
+     * than or equal to the number of vertices marks a vertex that is not 
+     * connected to the ground, and it is left out.
+     * 
+     * @param heights An array holding the height of each vertex.
+     */
+    public HeightLayers(int[] heights){
+        int size = heights.length;
+        int highest = 0;
+        int connected = 0;
+        for(int height: heights){
+            if(height < size){
+                connected++;
+                if(height > highest){
+                    highest = height;
+                }
+            }
+        }
+        maxHeight = highest;
+        layerStart = new int[highest + 2];
+        layerNodes = new int[connected];
+        for(int height: heights){
+            if(height < size){
+                layerStart[height + 1]++;
+            }
+        }
+        for(int h = 0; h <= highest; h++){
+            layerStart[h + 1] += layerStart[h];
+        }
+        int[] next = new int[highest + 1];
+        System.arraycopy(layerStart, 0, next, 0, highest + 1);
+        for(int i = 0; i < size; i++){
+            if(heights[i] < size){
+                layerNodes[next[heights[i]]++] = i;
+            }
+        }
+    }
+    
+    /**
+     * Returns the maximum height among connected vertices.
+     * @return A nonnegative integer.
+     */
+    public int getMaxHeight(){
+        return maxHeight;
+    }
+    
+    /**
+     * Returns the number of connected vertices, across all layers.
+     * @return A nonnegative integer.
+     */
+    public int getNodeCount(){
+        return layerNodes.length;
+    }
+    
+    /**
+     * Returns the number of vertices at a given height.
+     * @param height A nonnegative integer.
+     * @return The number of vertices at that height, or 0 if there are none.
+     */
+    public int getLayerSize(int height){
+        if(height < 0 || height > maxHeight){
+            return 0;
+        }
+        return layerStart[height + 1] - layerStart[height];
+    }
+    
+    /**
+     * Returns one of the vertices at a given height. Vertices within a layer
+     * are in increasing order.
+     * @param height An integer between 0 and getMaxHeight() inclusive.
+     * @param k An integer between 0 and (getLayerSize(height) - 1) inclusive.
+     * @return The index of the vertex.
+     */
+    public int getNode(int height, int k){
+        return layerNodes[layerStart[height] + k];
+    }
+    
+    /**
+     * Returns one of the connected vertices, listed layer by layer starting 
+     * from the ground.
+     * @param k An integer between 0 and (getNodeCount() - 1) inclusive.
+     * @return The index of the vertex.
+     */
+    public int getNodeInOrder(int k){
+        return layerNodes[k];
+    }
+    
+    /**
+     * Calculates the height of each vertex by a breadth-first search from the
+     * root. Vertices not connected to the root are given height size + 1.
+     * @param edges The edges of the graph.
+     * @param root An integer between 0 and (size - 1) inclusive.
+     * @return An array of heights, one per vertex.
+     */
+    public static int[] findHeights(EdgeStore edges, int root){
+        int size = edges.getSize();
+        int[] heights = new int[size];
+        for(int i = 0; i < size; i++){
+            heights[i] = size + 1;
+        }
+        int[] queue = new int[size];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = root;
+        heights[root] = 0;
+        while(head < tail){
+            int node = queue[head++];
+            int degree = edges.getDegree(node);
+            for(int slot = 0; slot < degree; slot++){
+                int neighbor = edges.getNeighbor(node, slot);
+                if(heights[neighbor] == size + 1 
+                        && (edges.getEdgesAt('r', node, slot) > 0
+                        || edges.getEdgesAt('b', node, slot) > 0)){
+                    heights[neighbor] = heights[node] + 1;
+                    queue[tail++] = neighbor;
+                }
+            }
+        }
+        return heights;
+    }
+    
+    /**
+     * Evaluates whether the part of the graph connected to the root is a tree,
+     * that is whether it contains no cycles, loops or multiple edges. Vertices
+     * not connected to the root are ignored.
+     * @param edges The edges of the graph.
+     * @param root An integer between 0 and (size - 1) inclusive.
+     * @return "true" if the connected part of the graph is a tree, "false"
+     * otherwise
+     */
+    public static boolean isTree(EdgeStore edges, int root){
+        int size = edges.getSize();
+        int[] parents = new int[size];
+        for(int i = 0; i < size; i++){
+            parents[i] = -1;
+        }
+        int[] queue = new int[size];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = root;
+        parents[root] = root;
+        while(head < tail){
+            int node = queue[head++];
+            int degree = edges.getDegree(node);
+            for(int slot = 0; slot < degree; slot++){
+                int neighbor = edges.getNeighbor(node, slot);
+                int sticks = edges.getEdgesAt('r', node, slot) 
+                        + edges.getEdgesAt('b', node, slot);
+                if(sticks == 0){
+                    continue;
+                }
+                if(sticks > 1 || neighbor == node){
+                    return false;
+                }
+                if(neighbor == parents[node] && node != root){
+                    continue;
+                }
+                if(parents[neighbor] != -1){
+                    return false;
+                }
+                parents[neighbor] = node;
+                queue[tail++] = neighbor;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,404 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.hackenbush;
+
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Metrics counts what the hot paths of the package do, so that the time a 
+ * slow position takes can be traced to moves, height searches, tree builds, 
+ * tree valuations or solver searches. It is off unless the system property
+ * hackenbush.metrics is "true" or setEnabled is called, and while it is off 
+ * each instrumented path only reads one flag.
+ * 
+ * While it is on, every record adds to the counters listed in Counter, which 
+ * any thread may read, reset or print through report, and also commits a 
+ * Flight Recorder event in the category "Hackenbush", which a recording 
+ * keeps only if it has that event enabled.
+ * @author Madeleine Bulkow
+ */
+public final class Metrics {
+    
+    /**
+     * Counter lists the quantities Metrics keeps.
+     */
+    public enum Counter {
+        MOVES("moves"),
+        STICKS_CUT("sticks cut"),
+        STICKS_DETACHED("sticks detached"),
+        MOVE_NANOS("move ns"),
+        HEIGHT_PASSES("full height passes"),
+        HEIGHT_REPAIRS("height repairs"),
+        HEIGHT_NANOS("height ns"),
+        TREE_BUILDS("tree builds"),
+        TREE_BUILD_NANOS("tree build ns"),
+        NODES_VALUED("tree nodes valued"),
+        VALUATION_NANOS("tree valuation ns"),
+        SEARCHES("solver searches"),
+        POSITIONS_SEARCHED("positions searched"),
+        CACHE_HITS("cache hits"),
+        CACHE_MISSES("cache misses"),
+        SEARCH_NANOS("solver ns"),
+        OUTCOME_NODES("outcome nodes searched"),
+        OUTCOME_NANOS("outcome search ns");
+        
+        private final String label;
+        
+        /**
+         * Constructor
+         * 
+         * @param label How the counter is named in reports.
+         */
+        Counter(String label){
+            this.label = label;
+        }
+        
+        /**
+         * Returns how the counter is named in reports.
+         * @return A short lowercase phrase.
+         */
+        public String getLabel(){
+            return label;
+        }
+    }
+    
+    private static final LongAdder[] COUNTERS = 
+            new LongAdder[Counter.values().length];
+    private static volatile boolean enabled = 
+            Boolean.getBoolean("hackenbush.metrics");
+    
+    static {
+        for(int c = 0; c < COUNTERS.length; c++){
+            COUNTERS[c] = new LongAdder();
+        }
+    }
+    
+    /**
+     * Not instantiable.
+     */
+    private Metrics(){
+    }
+    
+    /**
+     * Returns whether anything is being recorded.
+     * @return True if metrics are on.
+     */
+    public static boolean isEnabled(){
+        return enabled;
+    }
+    
+    /**
+     * Turns recording on or off. The counters keep their values either way.
+     * @param on Whether to record.
+     */
+    public static void setEnabled(boolean on){
+        enabled = on;
+    }
+    
+    /**
+     * Returns the current value of a counter.
+     * @param counter The counter.
+     * @return A nonnegative integer.
+     */
+    public static long get(Counter counter){
+        return COUNTERS[counter.ordinal()].sum();
+    }
+    
+    /**
+     * Sets every counter back to 0.
+     */
+    public static void reset(){
+        for(LongAdder counter: COUNTERS){
+            counter.reset();
+        }
+    }
+    
+    /**
+     * Lists every counter with its value, one to a line, followed by the 
+     * rates of the two solvers.
+     * @return A multi-line report.
+     */
+    public static String report(){
+        StringBuilder report = new StringBuilder();
+        for(Counter counter: Counter.values()){
+            report.append(counter.getLabel()).append(": ")
+                    .append(get(counter)).append('\n');
+        }
+        report.append("solver positions per second: ")
+                .append(String.format("%.0f", rate(
+                        Counter.POSITIONS_SEARCHED, Counter.SEARCH_NANOS)))
+                .append('\n');
+        report.append("outcome nodes per second: ")
+                .append(String.format("%.0f", rate(
+                        Counter.OUTCOME_NODES, Counter.OUTCOME_NANOS)))
+                .append('\n');
+        return report.toString();
+    }
+    
+    /**
+     * Records a move.
+     * @param sticksCut The number of sticks the move cut.
+     * @param sticksDetached The number of sticks it left detached.
+     * @param nanos The nanoseconds it took.
+     */
+    static void recordMove(int sticksCut, int sticksDetached, long nanos){
+        add(Counter.MOVES, 1);
+        add(Counter.STICKS_CUT, sticksCut);
+        add(Counter.STICKS_DETACHED, sticksDetached);
+        add(Counter.MOVE_NANOS, nanos);
+        MoveEvent event = new MoveEvent();
+        if(event.shouldCommit()){
+            event.sticksCut = sticksCut;
+            event.sticksDetached = sticksDetached;
+            event.elapsed = nanos;
+            event.commit();
+        }
+    }
+    
+    /**
+     * Records a search for heights, either over the whole position or only
+     * over the vertices a cut has affected.
+     * @param full Whether the whole position was searched.
+     * @param vertices The number of vertices searched.
+     * @param nanos The nanoseconds it took.
+     */
+    static void recordHeights(boolean full, int vertices, long nanos){
+        add(full ? Counter.HEIGHT_PASSES : Counter.HEIGHT_REPAIRS, 1);
+        add(Counter.HEIGHT_NANOS, nanos);
+        HeightsEvent event = new HeightsEvent();
+        if(event.shouldCommit()){
+            event.full = full;
+            event.vertices = vertices;
+            event.elapsed = nanos;
+            event.commit();
+        }
+    }
+    
+    /**
+     * Records a tree being built.
+     * @param vertices The number of vertices in the tree.
+     * @param nanos The nanoseconds it took.
+     */
+    static void recordTreeBuild(int vertices, long nanos){
+        add(Counter.TREE_BUILDS, 1);
+        add(Counter.TREE_BUILD_NANOS, nanos);
+        TreeBuildEvent event = new TreeBuildEvent();
+        if(event.shouldCommit()){
+            event.vertices = vertices;
+            event.elapsed = nanos;
+            event.commit();
+        }
+    }
+    
+    /**
+     * Records the nodes of a tree being valued.
+     * @param nodes The number of nodes valued.
+     * @param nanos The nanoseconds it took.
+     */
+    static void recordValuation(int nodes, long nanos){
+        add(Counter.NODES_VALUED, nodes);
+        add(Counter.VALUATION_NANOS, nanos);
+        ValuationEvent event = new ValuationEvent();
+        if(event.shouldCommit()){
+            event.nodes = nodes;
+            event.elapsed = nanos;
+            event.commit();
+        }
+    }
+    
+    /**
+     * Records a search by a HackenbushSolver.
+     * @param positions The number of positions searched.
+     * @param hits The number of positions found in the solver's cache.
+     * @param misses The number of positions not found there.
+     * @param nanos The nanoseconds it took.
+     */
+    static void recordSearch(long positions, long hits, long misses, 
+            long nanos){
+        add(Counter.SEARCHES, 1);
+        add(Counter.POSITIONS_SEARCHED, positions);
+        add(Counter.CACHE_HITS, hits);
+        add(Counter.CACHE_MISSES, misses);
+        add(Counter.SEARCH_NANOS, nanos);
+        SearchEvent event = new SearchEvent();
+        if(event.shouldCommit()){
+            event.positions = positions;
+            event.cacheHits = hits;
+            event.cacheMisses = misses;
+            event.elapsed = nanos;
+            event.commit();
+        }
+    }
+    
+    /**
+     * Records a search by an OutcomeSolver.
+     * @param nodes The number of positions searched.
+     * @param nanos The nanoseconds it took.
+     */
+    static void recordOutcomeSearch(long nodes, long nanos){
+        add(Counter.OUTCOME_NODES, nodes);
+        add(Counter.OUTCOME_NANOS, nanos);
+        OutcomeSearchEvent event = new OutcomeSearchEvent();
+        if(event.shouldCommit()){
+            event.nodes = nodes;
+            event.elapsed = nanos;
+            event.commit();
+        }
+    }
+    
+    /**
+     * Adds to a counter.
+     * @param counter The counter.
+     * @param amount The amount to add.
+     */
+    private static void add(Counter counter, long amount){
+        COUNTERS[counter.ordinal()].add(amount);
+    }
+    
+    /**
+     * Divides one counter by a counter of nanoseconds.
+     * @param count The counter of things done.
+     * @param nanos The counter of the nanoseconds they took.
+     * @return The things done per second, or 0 if no time was counted.
+     */
+    private static double rate(Counter count, Counter nanos){
+        long time = get(nanos);
+        return time == 0 ? 0 : get(count) * 1e9 / time;
+    }
+    
+    /**
+     * MoveEvent is committed by recordMove.
+     */
+    @Name("my.hackenbush.Move")
+    @Label("Move")
+    @Category("Hackenbush")
+    @Description("A stick cut by Hackenbush.move.")
+    static final class MoveEvent extends Event {
+        @Label("Sticks Cut")
+        int sticksCut;
+        
+        @Label("Sticks Detached")
+        int sticksDetached;
+        
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+    
+    /**
+     * HeightsEvent is committed by recordHeights.
+     */
+    @Name("my.hackenbush.Heights")
+    @Label("Heights")
+    @Category("Hackenbush")
+    @Description("A breadth-first search for the heights of vertices.")
+    static final class HeightsEvent extends Event {
+        @Label("Full Pass")
+        boolean full;
+        
+        @Label("Vertices")
+        int vertices;
+        
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+    
+    /**
+     * TreeBuildEvent is committed by recordTreeBuild.
+     */
+    @Name("my.hackenbush.TreeBuild")
+    @Label("Tree Build")
+    @Category("Hackenbush")
+    @Description("A CompactHackentree being built.")
+    static final class TreeBuildEvent extends Event {
+        @Label("Vertices")
+        int vertices;
+        
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+    
+    /**
+     * ValuationEvent is committed by recordValuation.
+     */
+    @Name("my.hackenbush.Valuation")
+    @Label("Tree Valuation")
+    @Category("Hackenbush")
+    @Description("The stale nodes of a tree being valued.")
+    static final class ValuationEvent extends Event {
+        @Label("Nodes")
+        int nodes;
+        
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+    
+    /**
+     * SearchEvent is committed by recordSearch.
+     */
+    @Name("my.hackenbush.Search")
+    @Label("Solver Search")
+    @Category("Hackenbush")
+    @Description("A position valued by a HackenbushSolver.")
+    static final class SearchEvent extends Event {
+        @Label("Positions Searched")
+        long positions;
+        
+        @Label("Cache Hits")
+        long cacheHits;
+        
+        @Label("Cache Misses")
+        long cacheMisses;
+        
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+    
+    /**
+     * OutcomeSearchEvent is committed by recordOutcomeSearch.
+     */
+    @Name("my.hackenbush.OutcomeSearch")
+    @Label("Outcome Search")
+    @Category("Hackenbush")
+    @Description("A position classified by an OutcomeSolver.")
+    static final class OutcomeSearchEvent extends Event {
+        @Label("Nodes Searched")
+        long nodes;
+        
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.hackenbush;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * MoveJournal records what each move did to a Hackenbush game, so that the 
+ * move can be taken back in time proportional to what it removed. Every 
+ * group of sticks removed, whether cut or left detached, is logged as its two
+ * vertices, its color and its count, and every height the move changed is 
+ * logged with its old value, all in flat integer arrays. Each move keeps the
+ * place where its entries start, together with the hashes and won flag from
+ * before it. Moves taken back are kept for redoing until a new move is made.
+ * @author Madeleine Bulkow
+ */
+class MoveJournal {
+    
+    private int[] sticks = new int[24];
+    private int stickEntries;
+    private int[] heights = new int[16];
+    private int heightEntries;
+    private final List<Move> moves = new ArrayList<>();
+    private final List<Move> undone = new ArrayList<>();
+    
+    /**
+     * Starts the record of a new move.
+     * @param color 'r' for red or 'b' for blue
+     * @param i An integer between 0 and (size - 1) inclusive.
+     * @param j An integer between 0 and (size - 1) inclusive.
+     * @param hash The position hash before the move.
+     * @param check The position check before the move.
+     * @param won Whether the game was marked as won before the move.
+     */
+    void begin(char color, int i, int j, long hash, long check, boolean won){
+        moves.add(new Move(color, i, j, stickEntries, heightEntries, hash, 
+                check, won));
+    }
+    
+    /**
+     * Logs sticks removed by the current move.
+     * @param color 'r' for red or 'b' for blue
+     * @param i An integer between 0 and (size - 1) inclusive.
+     * @param j An integer between 0 and (size - 1) inclusive.
+     * @param count The positive number of sticks removed.
+     */
+    void logSticks(char color, int i, int j, int count){
+        if(3 * stickEntries + 3 > sticks.length){
+            sticks = Arrays.copyOf(sticks, 2 * sticks.length);
+        }
+        int k = 3 * stickEntries++;
+        sticks[k] = i;
+        sticks[k + 1] = j;
+        sticks[k + 2] = (count << 1) | (color == 'r' ? 0 : 1);
+    }
+    
+    /**
+     * Logs the height of a vertex before the current move changes it.
+     * @param node An integer between 0 and (size - 1) inclusive.
+     * @param height Its height before the move.
+     */
+    void logHeight(int node, int height){
+        if(2 * heightEntries + 2 > heights.length){
+            heights = Arrays.copyOf(heights, 2 * heights.length);
+        }
+        int k = 2 * heightEntries++;
+        heights[k] = node;
+        heights[k + 1] = height;
+    }
+    
+    /**
+     * Takes back the last move, putting back its sticks and heights, and keeps
+     * it for redoing.
+     * @param edges The edges of the game.
+     * @param nodeHeights The heights of the game.
+     * @return The record of the move, or null if there is none.
+     */
+    Move undo(EdgeStore edges, int[] nodeHeights){
+        if(moves.isEmpty()){
+            return null;
+        }
+        Move move = moves.remove(moves.size() - 1);
+        for(int e = stickEntries - 1; e >= move.stickStart; e--){
+            int k = 3 * e;
+            edges.addEdges((sticks[k + 2] & 1) == 0 ? 'r' : 'b', sticks[k], 
+                    sticks[k + 1], sticks[k + 2] >>> 1);
+        }
+        for(int e = heightEntries - 1; e >= move.heightStart; e--){
+            nodeHeights[heights[2 * e]] = heights[2 * e + 1];
+        }
+        stickEntries = move.stickStart;
+        heightEntries = move.heightStart;
+        undone.add(move);
+        return move;
+    }
+    
+    /**
+     * Returns the record of the last move.
+     * @return The record, or null if there is none.
+     */
+    Move lastMove(){
+        return moves.isEmpty() ? null : moves.get(moves.size() - 1);
+    }
+    
+    /**
+     * Lists every vertex at the end of a stick the last move removed.
+     * @return An array of vertices, possibly with repeats.
+     */
+    int[] lastMoveVertices(){
+        if(moves.isEmpty()){
+            return new int[0];
+        }
+        int start = moves.get(moves.size() - 1).stickStart;
+        int[] vertices = new int[2 * (stickEntries - start)];
+        for(int e = start; e < stickEntries; e++){
+            vertices[2 * (e - start)] = sticks[3 * e];
+            vertices[2 * (e - start) + 1] = sticks[3 * e + 1];
+        }
+        return vertices;
+    }
+    
+    /**
+     * Returns the move that would be redone next.
+     * @return The record of the move, or null if there is none.
+     */
+    Move nextRedo(){
+        return undone.isEmpty() ? null : undone.get(undone.size() - 1);
+    }
+    
+    /**
+     * Drops the move that would be redone next, once it has been made again.
+     */
+    void popRedo(){
+        undone.remove(undone.size() - 1);
+    }
+    
+    /**
+     * Drops every move kept for redoing, as when a new move is made.
+     */
+    void clearRedo(){
+        undone.clear();
+    }
+    
+    /**
+     * Returns the number of moves that can be taken back.
+     * @return A nonnegative integer.
+     */
+    int getMoveCount(){
+        return moves.size();
+    }
+    
+    /**
+     * Returns the number of moves that can be redone.
+     * @return A nonnegative integer.
+     */
+    int getRedoCount(){
+        return undone.size();
+    }
+    
+    /**
+     * Move holds the record of one move: the stick cut, where its entries 
+     * start in the journal, and what the game looked like before it.
+     */
+    static class Move {
+        
+        final char color;
+        final int i;
+        final int j;
+        final int stickStart;
+        final int heightStart;
+        final long hash;
+        final long check;
+        final boolean won;
+        
+        /**
+         * Constructor
+         * 
+         * @param color 'r' for red or 'b' for blue
+         * @param i One vertex of the stick cut.
+         * @param j The other vertex of the stick cut.
+         * @param stickStart The first stick entry of the move.
+         * @param heightStart The first height entry of the move.
+         * @param hash The position hash before the move.
+         * @param check The position check before the move.
+         * @param won Whether the game was marked as won before the move.
+         */
+        Move(char color, int i, int j, int stickStart, int heightStart, 
+                long hash, long check, boolean won){
+            this.color = color;
+            this.i = i;
+            this.j = j;
+            this.stickStart = stickStart;
+            this.heightStart = heightStart;
+            this.hash = hash;
+            this.check = check;
+            this.won = won;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.hackenbush;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import my.combinatorialgame.GameValue;
+
+/**
+ * MoveValue records a single move, the color of the stick cut and the two
+ * vertices it joins, together with the value of the position the move leaves.
+ * @author Madeleine Bulkow
+ */
+public class MoveValue {
+    
+    private final char color;
+    private final int start;
+    private final int end;
+    private final GameValue value;
+    
+    /**
+     * Constructor
+     * 
+     * @param color 'r' for red or 'b' for blue.
+     * @param start The vertex at one end of the stick.
+     * @param end The vertex at the other end of the stick.
+     * @param value The value of the position after the move.
+     */
+    public MoveValue(char color, int start, int end, GameValue value){
+        this.color = color;
+        this.start = start;
+        this.end = end;
+        this.value = value;
+    }
+    
+    /**
+     * Returns the color of the stick cut.
+     * @return 'r' for red or 'b' for blue.
+     */
+    public char getColor(){
+        return color;
+    }
+    
+    /**
+     * Returns the vertex at one end of the stick, the lower one for a tree.
+     * @return An integer between 0 and (size - 1) inclusive.
+     */
+    public int getStart(){
+        return start;
+    }
+    
+    /**
+     * Returns the vertex at the other end of the stick.
+     * @return An integer between 0 and (size - 1) inclusive.
+     */
+    public int getEnd(){
+        return end;
+    }
+    
+    /**
+     * Returns the value of the position after the move.
+     * @return A GameValue, positive if Blue is ahead and negative if Red is.
+     */
+    public GameValue getValue(){
+        return value;
+    }
+    
+    /**
+     * Sorts moves so that the best for the player comes first: the highest 
+     * values for Blue and the lowest for Red. Moves of equal value are kept
+     * in order of their vertices.
+     * @param moves A list of moves by one player.
+     * @param color 'r' for red or 'b' for blue.
+     */
+    static void sortBestFirst(List<MoveValue> moves, final char color){
+        Collections.sort(moves, new Comparator<MoveValue>(){
+            @Override
+            public int compare(MoveValue a, MoveValue b){
+                int compare = a.value.compareTo(b.value);
+                if(compare != 0){
+                    return color == 'b' ? -compare : compare;
+                }
+                if(a.start != b.start){
+                    return Integer.compare(a.start, b.start);
+                }
+                return Integer.compare(a.end, b.end);
+            }
+        });
+    }
+}
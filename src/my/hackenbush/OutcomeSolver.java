@@ -0,0 +1,461 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.hackenbush;
+
+import java.util.Arrays;
+import my.combinatorialgame.Outcome;
+
+/**
+ * OutcomeSolver finds who wins a Red-Blue Hackenbush position, without 
+ * finding its exact value. For each player moving first it runs a negamax 
+ * search with alpha-beta pruning, in which a win scores WIN and a loss -WIN, 
+ * and a position at the depth limit scores its difference in sticks. The 
+ * limit is raised one move at a time until the first move is proven to win
+ * or lose, which it must be once the limit passes the number of sticks.
+ * 
+ * A player with no sticks left loses, a player whose opponent has none left
+ * wins, and a position that has become a tree is settled by the sign of its
+ * CompactHackentree value. Results proven this way, and the best move found
+ * in every position searched, are kept in a table keyed on the position hash
+ * and the player to move. The table is a fixed budget of parallel arrays of
+ * primitives split into sets of TABLE_WAYS entries, as in ValueCache. When a
+ * set is full, the estimate stored longest ago makes way, and proven results
+ * only make way for each other. Moves are tried with the best move from the
+ * table first and then in order of height, cutting closest to the ground 
+ * first, since those cuts remove the most. Moves are made and taken back on a
+ * single copy of the position.
+ * 
+ * The search can be given a budget of wall-clock time, after which it gives 
+ * up and reports no outcome. It can also be given a PersistentTable, whose
+ * outcome classes settle any position searched that it holds, and which is
+ * given the outcome class of every position solved.
+ * @author Madeleine Bulkow
+ */
+public class OutcomeSolver {
+    
+    private static final int WIN = 1 << 24;
+    private static final long BLUE_TO_MOVE = 0x5DEECE66DL;
+    private static final int TIME_CHECK = 1023;
+    private static final byte EMPTY = 0;
+    private static final byte ESTIMATE = 1;
+    private static final byte PROVEN = 2;
+    
+    /**
+     * The most vertices a position may have to be solved, since the two ends
+     * of a move are packed into 20 bits each.
+     */
+    public static final int MAX_VERTICES = 1 << 20;
+    
+    /**
+     * The number of bytes the table holds for each entry.
+     */
+    public static final int TABLE_ENTRY_BYTES = 33;
+    
+    /**
+     * The number of entries in each set of the table.
+     */
+    public static final int TABLE_WAYS = 4;
+    
+    /**
+     * The number of bytes the table takes unless told otherwise.
+     */
+    public static final long DEFAULT_TABLE_BYTES = 16L << 20;
+    
+    private final long budgetNanos;
+    private final PersistentTable disk;
+    private final int tableMask;
+    private final long[] tableHashes;
+    private final long[] tableChecks;
+    private final int[] tableScores;
+    private final int[] tableBestI;
+    private final int[] tableBestJ;
+    private final int[] tableStamps;
+    private final byte[] tableStates;
+    private int tableSize;
+    private int clock;
+    private Hackenbush position;
+    private long[][] moveLists;
+    private long nodesSearched;
+    private long elapsedNanos;
+    private long deadline;
+    private boolean outOfTime;
+    private int depthReached;
+    
+    /**
+     * Constructor for a solver with no time limit.
+     */
+    public OutcomeSolver(){
+        this(Long.MAX_VALUE);
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param budgetMillis The most wall-clock time, in milliseconds, each call
+     * to solve may take before giving up.
+     */
+    public OutcomeSolver(long budgetMillis){
+        this(budgetMillis, null);
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param budgetMillis The most wall-clock time, in milliseconds, each call
+     * to solve may take before giving up.
+     * @param disk A table shared with other solvers and runs, or null.
+     */
+    public OutcomeSolver(long budgetMillis, PersistentTable disk){
+        this(budgetMillis, disk, DEFAULT_TABLE_BYTES);
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param budgetMillis The most wall-clock time, in milliseconds, each call
+     * to solve may take before giving up.
+     * @param disk A table shared with other solvers and runs, or null.
+     * @param tableBytes The most bytes the table may take, at least 
+     * TABLE_WAYS * TABLE_ENTRY_BYTES.
+     */
+    public OutcomeSolver(long budgetMillis, PersistentTable disk, 
+            long tableBytes){
+        this.disk = disk;
+        if(budgetMillis <= 0){
+            throw new IllegalArgumentException("Budget must be positive.");
+        }
+        if(tableBytes < TABLE_WAYS * TABLE_ENTRY_BYTES){
+            throw new IllegalArgumentException("Table too small for a set.");
+        }
+        budgetNanos = budgetMillis > Long.MAX_VALUE / 1000000 
+                ? Long.MAX_VALUE : budgetMillis * 1000000;
+        int sets = Integer.highestOneBit((int) Math.min(
+                tableBytes / (TABLE_WAYS * TABLE_ENTRY_BYTES), 
+                Integer.MAX_VALUE / TABLE_WAYS));
+        tableMask = sets - 1;
+        tableHashes = new long[sets * TABLE_WAYS];
+        tableChecks = new long[sets * TABLE_WAYS];
+        tableScores = new int[sets * TABLE_WAYS];
+        tableBestI = new int[sets * TABLE_WAYS];
+        tableBestJ = new int[sets * TABLE_WAYS];
+        tableStamps = new int[sets * TABLE_WAYS];
+        tableStates = new byte[sets * TABLE_WAYS];
+    }
+    
+    /**
+     * Finds the outcome class of a position. The position itself is not 
+     * changed.
+     * @param original A Hackenbush game with at most MAX_VERTICES vertices.
+     * @return The outcome class, or null if the time budget ran out first.
+     */
+    public Outcome solve(Hackenbush original){
+        if(original.getSize() > MAX_VERTICES){
+            throw new IllegalArgumentException(
+                    "Too many vertices to search.");
+        }
+        long start = System.nanoTime();
+        deadline = budgetNanos > Long.MAX_VALUE - start 
+                ? Long.MAX_VALUE : start + budgetNanos;
+        outOfTime = false;
+        nodesSearched = 0;
+        depthReached = 0;
+        position = new Simplification(original, new HackenbushSolver(), 0)
+                .getPosition();
+        int slots = 0;
+        for(int i = 0; i < position.getSize(); i++){
+            slots += position.getDegree(i);
+        }
+        moveLists = new long[1][slots];
+        Boolean leftFirstWins = firstPlayerWins('b');
+        Boolean rightFirstWins = leftFirstWins == null ? null 
+                : firstPlayerWins('r');
+        elapsedNanos = System.nanoTime() - start;
+        if(Metrics.isEnabled()){
+            Metrics.recordOutcomeSearch(nodesSearched, elapsedNanos);
+        }
+        if(rightFirstWins == null){
+            position = null;
+            return null;
+        }
+        Outcome outcome = Outcome.of(leftFirstWins, rightFirstWins);
+        if(disk != null){
+            disk.putOutcome(position.getPositionHash(), 
+                    position.getPositionCheck(), outcome);
+        }
+        position = null;
+        return outcome;
+    }
+    
+    /**
+     * Returns the number of positions searched by the last call to solve.
+     * @return A nonnegative integer.
+     */
+    public long getNodesSearched(){
+        return nodesSearched;
+    }
+    
+    /**
+     * Returns the number of positions searched per second by the last call to
+     * solve.
+     * @return A nonnegative number.
+     */
+    public double getNodesPerSecond(){
+        return elapsedNanos == 0 ? 0 : nodesSearched * 1e9 / elapsedNanos;
+    }
+    
+    /**
+     * Returns the time taken by the last call to solve.
+     * @return A nonnegative number of milliseconds.
+     */
+    public long getElapsedMillis(){
+        return elapsedNanos / 1000000;
+    }
+    
+    /**
+     * Returns the deepest depth limit the last call to solve completed.
+     * @return A nonnegative integer.
+     */
+    public int getDepthReached(){
+        return depthReached;
+    }
+    
+    /**
+     * Returns the number of positions stored in the table.
+     * @return A nonnegative integer.
+     */
+    public int getTableSize(){
+        return tableSize;
+    }
+    
+    /**
+     * Searches with a rising depth limit until the first move is proven to
+     * win or lose.
+     * @param color 'r' if Red moves first or 'b' if Blue does.
+     * @return Whether the first player wins, or null if the time ran out.
+     */
+    private Boolean firstPlayerWins(char color){
+        for(int depth = 1; ; depth++){
+            int score = search(color, depth, 0, -WIN, WIN);
+            if(outOfTime){
+                return null;
+            }
+            depthReached = Math.max(depthReached, depth);
+            if(score == WIN || score == -WIN){
+                return score == WIN;
+            }
+        }
+    }
+    
+    /**
+     * Reads from an outcome class whether the player to move wins.
+     * @param outcome The outcome class of the position.
+     * @param color 'r' or 'b', the player to move.
+     * @return "true" if the player to move wins.
+     */
+    private static boolean firstPlayerWins(Outcome outcome, char color){
+        switch(outcome){
+            case LEFT:
+                return color == 'b';
+            case RIGHT:
+                return color == 'r';
+            case FIRST:
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    /**
+     * Scores the position for the player to move by negamax with alpha-beta
+     * pruning. Scores of WIN and -WIN are proven; any other score is an 
+     * estimate from the positions at the depth limit.
+     * @param color 'r' or 'b', the player to move.
+     * @param depth The number of moves left before the depth limit.
+     * @param ply The number of moves made since the root.
+     * @param alpha The score the player to move can already reach.
+     * @param beta The score the opponent can already hold the player to.
+     * @return The score, from the point of view of the player to move.
+     */
+    private int search(char color, int depth, int ply, int alpha, int beta){
+        nodesSearched++;
+        if((nodesSearched & TIME_CHECK) == 0 && System.nanoTime() > deadline){
+            outOfTime = true;
+        }
+        if(outOfTime){
+            return 0;
+        }
+        char other = color == 'b' ? 'r' : 'b';
+        long key = position.getPositionHash() 
+                ^ (color == 'b' ? BLUE_TO_MOVE : 0);
+        long check = position.getPositionCheck();
+        int entry = find(key, check);
+        if(entry >= 0 && tableStates[entry] == PROVEN){
+            return tableScores[entry];
+        }
+        Outcome known = disk == null ? null 
+                : disk.getOutcome(position.getPositionHash(), check);
+        if(known != null){
+            return firstPlayerWins(known, color) ? WIN : -WIN;
+        }
+        long own = position.getEdgeTotal(color);
+        long opposing = position.getEdgeTotal(other);
+        if(own == 0 || opposing == 0){
+            return own == 0 ? -WIN : WIN;
+        }
+        if(position.isTree()){
+            int sign = new CompactHackentree(position).getGameValue().signum();
+            int score = (color == 'b' ? sign > 0 : sign < 0) ? WIN : -WIN;
+            store(key, check, score, -1, -1);
+            return score;
+        }
+        if(depth == 0){
+            return (int) Math.max(1 - WIN, Math.min(WIN - 1, own - opposing));
+        }
+        
+        int count = listMoves(color, ply, entry);
+        long[] moves = moveLists[ply];
+        int best = -WIN - 1;
+        int bestI = -1;
+        int bestJ = -1;
+        for(int k = 0; k < count && alpha < beta; k++){
+            int i = (int) (moves[k] >>> 20) & 0xFFFFF;
+            int j = (int) moves[k] & 0xFFFFF;
+            position.move(color, i, j);
+            int score = -search(other, depth - 1, ply + 1, -beta, -alpha);
+            position.unmove();
+            if(outOfTime){
+                return 0;
+            }
+            if(score > best){
+                best = score;
+                bestI = i;
+                bestJ = j;
+            }
+            alpha = Math.max(alpha, best);
+        }
+        store(key, check, best, bestI, bestJ);
+        return best;
+    }
+    
+    /**
+     * Lists the moves of the player to move in the order they are to be 
+     * tried: the best move from the table first, then the rest by the height
+     * of the lower end of the stick.
+     * @param color 'r' or 'b', the player to move.
+     * @param ply The number of moves made since the root, which picks the
+     * list to fill.
+     * @param entry The table slot for the position, or -1.
+     * @return The number of moves listed.
+     */
+    private int listMoves(char color, int ply, int entry){
+        if(ply == moveLists.length){
+            moveLists = Arrays.copyOf(moveLists, 2 * ply);
+        }
+        if(moveLists[ply] == null){
+            moveLists[ply] = new long[moveLists[0].length];
+        }
+        long[] moves = moveLists[ply];
+        int[] heights = position.getHeights();
+        int size = position.getSize();
+        int count = 0;
+        for(int i = 0; i < size; i++){
+            int degree = position.getDegree(i);
+            for(int slot = 0; slot < degree; slot++){
+                int j = position.getNeighbor(i, slot);
+                if(j < i || position.getEdgeCountAt(color, i, slot) == 0){
+                    continue;
+                }
+                long order = entry >= 0 && tableBestI[entry] == i 
+                        && tableBestJ[entry] == j 
+                        ? 0 : 1 + Math.min(heights[i], heights[j]);
+                moves[count++] = (order << 40) | ((long) i << 20) | j;
+            }
+        }
+        Arrays.sort(moves, 0, count);
+        return count;
+    }
+    
+    /**
+     * Finds the table slot holding a key.
+     * @param key The position hash, combined with the player to move.
+     * @param check The position check.
+     * @return The slot, or -1 if the key is not stored.
+     */
+    private int find(long key, long check){
+        int start = ((int) key & tableMask) * TABLE_WAYS;
+        for(int slot = start; slot < start + TABLE_WAYS; slot++){
+            if(tableStates[slot] != EMPTY && tableHashes[slot] == key 
+                    && tableChecks[slot] == check){
+                return slot;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Stores what was found about a position, replacing what was stored for
+     * it. Otherwise an empty slot in its set is taken, or else the estimate 
+     * stored longest ago. A proven score only replaces the proven score 
+     * stored longest ago if the set holds nothing else, and an estimate is
+     * not stored at all then.
+     * @param key The position hash, combined with the player to move.
+     * @param check The position check.
+     * @param score The score found.
+     * @param bestI One end of the best move found, or -1.
+     * @param bestJ The other end of the best move found, or -1.
+     */
+    private void store(long key, long check, int score, int bestI, 
+            int bestJ){
+        byte state = score == WIN || score == -WIN ? PROVEN : ESTIMATE;
+        int slot = find(key, check);
+        if(slot < 0){
+            int start = ((int) key & tableMask) * TABLE_WAYS;
+            for(int way = start; way < start + TABLE_WAYS; way++){
+                if(tableStates[way] == EMPTY){
+                    slot = way;
+                    break;
+                }
+                if(slot < 0 || tableStates[way] < tableStates[slot] 
+                        || (tableStates[way] == tableStates[slot] 
+                        && tableStamps[way] - tableStamps[slot] < 0)){
+                    slot = way;
+                }
+            }
+            if(tableStates[slot] == EMPTY){
+                tableSize++;
+            }
+            else if(tableStates[slot] > state){
+                return;
+            }
+            tableHashes[slot] = key;
+            tableChecks[slot] = check;
+        }
+        tableScores[slot] = score;
+        tableBestI[slot] = bestI;
+        tableBestJ[slot] = bestJ;
+        tableStamps[slot] = ++clock;
+        tableStates[slot] = state;
+    }
+}
@@ -0,0 +1,379 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.hackenbush;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.VarHandle;
+import java.math.BigInteger;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import my.combinatorialgame.GameValue;
+import my.combinatorialgame.Outcome;
+
+/**
+ * PersistentTable is a transposition table kept in a memory-mapped file, so
+ * that values and outcome classes found in one run can be used by later runs
+ * and by other processes. Entries are keyed on the position hash kept by 
+ * Hackenbush, which does not depend on the run, and carry the position check
+ * as well so that positions whose hashes collide are told apart.
+ * 
+ * The file starts with a header of HEADER_BYTES bytes: the magic number
+ * MAGIC, the format VERSION, the number of slots (a power of two) and the 
+ * number of slots in use. It is followed by that many slots of SLOT_BYTES 
+ * bytes each, holding in order the hash, the check, the numerator of the 
+ * value, the exponent of its denominator, and a flags byte: whether the slot
+ * is in use, whether it holds a value, and one more than the ordinal of its
+ * Outcome, or 0 if it holds none. Every number is big-endian. Values whose 
+ * numerator or denominator does not fit in a long are kept by their outcome
+ * class only.
+ * 
+ * A key is looked for in the slot its hash picks and in the MAX_PROBE slots
+ * after it. A new key goes in the first free slot among those, or replaces 
+ * the key in the first slot if all are taken, so the table never grows. 
+ * 
+ * Several processes may use the file at once. Reads and writes within one 
+ * process are synchronized, and every write holds a FileLock on the file, so
+ * only one process writes at a time. A writer clears the flags byte of a 
+ * slot before changing its key and writes the flags byte last. A reader 
+ * reads the flags first and checks the flags and the key again after reading
+ * the rest, so a slot that changes while it is read counts as a miss rather
+ * than giving a value half written. File locks are held by a whole process,
+ * so each process should open a file only once.
+ * @author Madeleine Bulkow
+ */
+public class PersistentTable {
+    
+    /**
+     * The first eight bytes of every table file.
+     */
+    public static final long MAGIC = 0x484B4E4254424C45L;
+    
+    /**
+     * The version of the file format described above.
+     */
+    public static final int VERSION = 1;
+    
+    private static final int HEADER_BYTES = 64;
+    private static final int SLOT_BYTES = 32;
+    private static final int MAX_PROBE = 16;
+    private static final int VERSION_AT = 8;
+    private static final int SLOTS_AT = 12;
+    private static final int USED_AT = 16;
+    private static final int CHECK_AT = 8;
+    private static final int NUM_AT = 16;
+    private static final int EXP_AT = 24;
+    private static final int FLAGS_AT = 28;
+    private static final byte IN_USE = 1;
+    private static final byte HAS_VALUE = 2;
+    
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int slotCount;
+    
+    /**
+     * Opens a table file, creating it with the given number of slots if it 
+     * does not exist. An existing file keeps its own number of slots.
+     * @param path The table file.
+     * @param slots The number of slots for a new file, rounded up to a power
+     * of two.
+     * @throws IOException If the file cannot be opened or mapped, or is not a
+     * table file of this version.
+     */
+    @SuppressWarnings("try")
+    public PersistentTable(File path, int slots) throws IOException{
+        if(slots < 1 || slots > (Integer.MAX_VALUE - HEADER_BYTES) 
+                / SLOT_BYTES){
+            throw new IllegalArgumentException("Unsupported number of slots.");
+        }
+        file = new RandomAccessFile(path, "rw");
+        try(FileLock lock = file.getChannel().lock()){
+            boolean exists = file.length() > 0;
+            if(exists){
+                if(file.length() < HEADER_BYTES || file.readLong() != MAGIC){
+                    throw new IOException(path + " is not a table file.");
+                }
+                int version = file.readInt();
+                if(version != VERSION){
+                    throw new IOException(path + " has format version " 
+                            + version + ", not " + VERSION + ".");
+                }
+                slotCount = file.readInt();
+                if(Integer.bitCount(slotCount) != 1 || file.length() 
+                        != HEADER_BYTES + (long) slotCount * SLOT_BYTES){
+                    throw new IOException(path + " is truncated.");
+                }
+            }
+            else{
+                slotCount = Integer.highestOneBit(slots) == slots ? slots 
+                        : Integer.highestOneBit(slots) << 1;
+                file.setLength(HEADER_BYTES + (long) slotCount * SLOT_BYTES);
+            }
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_BYTES + (long) slotCount * SLOT_BYTES);
+            if(!exists){
+                buffer.putLong(0, MAGIC);
+                buffer.putInt(VERSION_AT, VERSION);
+                buffer.putInt(SLOTS_AT, slotCount);
+                buffer.putInt(USED_AT, 0);
+                buffer.force();
+            }
+        }
+        catch(IOException | RuntimeException e){
+            file.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Returns the number of slots in the table.
+     * @return A power of two.
+     */
+    public int getSlotCount(){
+        return slotCount;
+    }
+    
+    /**
+     * Returns the number of slots in use.
+     * @return A nonnegative integer.
+     */
+    public synchronized int getEntryCount(){
+        return buffer.getInt(USED_AT);
+    }
+    
+    /**
+     * Looks up the value stored for a position.
+     * @param hash The position hash.
+     * @param check The position check.
+     * @return The value, or null if none is stored.
+     */
+    public synchronized GameValue getValue(long hash, long check){
+        int slot = find(hash, check);
+        if(slot < 0){
+            return null;
+        }
+        int flags = flags(slot);
+        if((flags & HAS_VALUE) == 0){
+            return null;
+        }
+        VarHandle.acquireFence();
+        int at = offset(slot);
+        long num = buffer.getLong(at + NUM_AT);
+        int exp = buffer.getInt(at + EXP_AT);
+        VarHandle.acquireFence();
+        if(flags(slot) != flags || !holds(slot, hash, check)){
+            return null;
+        }
+        return new GameValue(BigInteger.valueOf(num), exp);
+    }
+    
+    /**
+     * Looks up the outcome class stored for a position.
+     * @param hash The position hash.
+     * @param check The position check.
+     * @return The outcome class, or null if none is stored.
+     */
+    public synchronized Outcome getOutcome(long hash, long check){
+        int slot = find(hash, check);
+        if(slot < 0){
+            return null;
+        }
+        int flags = flags(slot);
+        if(!holds(slot, hash, check)){
+            return null;
+        }
+        int outcome = flags >>> 2;
+        return outcome == 0 ? null : Outcome.values()[outcome - 1];
+    }
+    
+    /**
+     * Stores the value of a position, together with its outcome class.
+     * @param hash The position hash.
+     * @param check The position check.
+     * @param value The value of the position.
+     */
+    @SuppressWarnings("try")
+    public synchronized void putValue(long hash, long check, GameValue value){
+        try(FileLock lock = lockFile()){
+            int at = offset(claim(hash, check));
+            byte flags = (byte) (IN_USE 
+                    | (Outcome.of(value).ordinal() + 1) << 2);
+            if(value.fitsInLong()){
+                buffer.putLong(at + NUM_AT, value.getNum());
+                buffer.putInt(at + EXP_AT, value.getExponent());
+                flags |= HAS_VALUE;
+            }
+            VarHandle.releaseFence();
+            buffer.put(at + FLAGS_AT, flags);
+        }
+        catch(IOException e){
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * Stores the outcome class of a position, keeping any value already 
+     * stored for it.
+     * @param hash The position hash.
+     * @param check The position check.
+     * @param outcome The outcome class of the position.
+     */
+    @SuppressWarnings("try")
+    public synchronized void putOutcome(long hash, long check, 
+            Outcome outcome){
+        try(FileLock lock = lockFile()){
+            int slot = claim(hash, check);
+            byte flags = (byte) ((flags(slot) & HAS_VALUE) | IN_USE 
+                    | (outcome.ordinal() + 1) << 2);
+            VarHandle.releaseFence();
+            buffer.put(offset(slot) + FLAGS_AT, flags);
+        }
+        catch(IOException e){
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * Writes any changes out to the file.
+     */
+    public synchronized void force(){
+        buffer.force();
+    }
+    
+    /**
+     * Writes any changes out to the file and closes it. The table must not be
+     * used afterwards.
+     * @throws IOException If the file cannot be closed.
+     */
+    public synchronized void close() throws IOException{
+        buffer.force();
+        file.close();
+    }
+    
+    /**
+     * Finds the slot holding a key.
+     * @param hash The position hash.
+     * @param check The position check.
+     * @return The slot, or -1 if the key is not stored.
+     */
+    private int find(long hash, long check){
+        int home = (int) hash & (slotCount - 1);
+        for(int probe = 0; probe < MAX_PROBE && probe < slotCount; probe++){
+            int slot = (home + probe) & (slotCount - 1);
+            if((flags(slot) & IN_USE) == 0){
+                return -1;
+            }
+            if(holds(slot, hash, check)){
+                return slot;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Checks whether a slot holds a key, after any flags read before it.
+     * @param slot An integer between 0 and (slotCount - 1) inclusive.
+     * @param hash The position hash.
+     * @param check The position check.
+     * @return True if the slot holds the key.
+     */
+    private boolean holds(int slot, long hash, long check){
+        VarHandle.acquireFence();
+        int at = offset(slot);
+        return buffer.getLong(at) == hash 
+                && buffer.getLong(at + CHECK_AT) == check;
+    }
+    
+    /**
+     * Takes the lock every write to the file holds.
+     * @return The lock, to be released once the write is done.
+     * @throws IOException If the lock cannot be taken.
+     */
+    private FileLock lockFile() throws IOException{
+        return file.getChannel().lock();
+    }
+    
+    /**
+     * Finds the slot for a key, claiming a free one or replacing the key in 
+     * its home slot if it is not stored yet. A claimed slot is left with no
+     * flags until the caller writes them.
+     * @param hash The position hash.
+     * @param check The position check.
+     * @return The slot.
+     */
+    private int claim(long hash, long check){
+        int home = (int) hash & (slotCount - 1);
+        for(int probe = 0; probe < MAX_PROBE && probe < slotCount; probe++){
+            int slot = (home + probe) & (slotCount - 1);
+            if((flags(slot) & IN_USE) == 0){
+                buffer.putInt(USED_AT, buffer.getInt(USED_AT) + 1);
+                return take(slot, hash, check);
+            }
+            int at = offset(slot);
+            if(buffer.getLong(at) == hash 
+                    && buffer.getLong(at + CHECK_AT) == check){
+                return slot;
+            }
+        }
+        return take(home, hash, check);
+    }
+    
+    /**
+     * Writes a key into a slot, clearing whatever it held. The slot is marked
+     * as out of use before the key is written, and left so.
+     * @param slot An integer between 0 and (slotCount - 1) inclusive.
+     * @param hash The position hash.
+     * @param check The position check.
+     * @return The slot.
+     */
+    private int take(int slot, long hash, long check){
+        int at = offset(slot);
+        buffer.put(at + FLAGS_AT, (byte) 0);
+        VarHandle.storeStoreFence();
+        buffer.putLong(at, hash);
+        buffer.putLong(at + CHECK_AT, check);
+        return slot;
+    }
+    
+    /**
+     * Reads the flags byte of a slot.
+     * @param slot An integer between 0 and (slotCount - 1) inclusive.
+     * @return The flags, as a nonnegative integer.
+     */
+    private int flags(int slot){
+        return buffer.get(offset(slot) + FLAGS_AT) & 0xFF;
+    }
+    
+    /**
+     * Finds where a slot starts in the file.
+     * @param slot An integer between 0 and (slotCount - 1) inclusive.
+     * @return The offset in bytes.
+     */
+    private static int offset(int slot){
+        return HEADER_BYTES + slot * SLOT_BYTES;
+    }
+}
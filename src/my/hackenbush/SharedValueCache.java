@@ -0,0 +1,241 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.hackenbush;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import my.combinatorialgame.GameValue;
+
+/**
+ * SharedValueCache is a ValueCache that several threads can use at once, so
+ * that solvers running in parallel can share the values they find. It is 
+ * split into stripes, each a ValueCache with its share of the budget and its
+ * own lock, and a key is kept in the stripe picked by the high half of its 
+ * hash. Stores take the stripe's lock, so threads only wait for each other 
+ * when they store into the same stripe at the same time. 
+ * 
+ * Lookups take no lock. Each stripe has a version, which a store makes odd 
+ * while it changes the stripe and even again once it is done. A lookup reads
+ * the version, reads the entry, and reads the version again, and only trusts
+ * what it read if the version was even and did not change. Otherwise it 
+ * looks again under the lock, so a value is never seen half written. A 
+ * lookup without the lock does not mark the entry as used, so entries that 
+ * are only read are evicted as if they were read once when they were 
+ * stored.
+ * @author Madeleine Bulkow
+ */
+public class SharedValueCache {
+    
+    private static final int VERSION_STRIDE = 16;
+    
+    private final ValueCache[] stripes;
+    private final AtomicIntegerArray versions;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    
+    /**
+     * Constructor, with enough stripes that 16 threads, or four for each
+     * processor, seldom meet in one.
+     * 
+     * @param budgetBytes The most bytes the cache may take.
+     */
+    public SharedValueCache(long budgetBytes){
+        this(budgetBytes, Math.max(64, 
+                4 * Runtime.getRuntime().availableProcessors()));
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param budgetBytes The most bytes the cache may take, at least 
+     * stripes * ValueCache.WAYS * ValueCache.ENTRY_BYTES.
+     * @param stripes The number of stripes, rounded up to a power of two.
+     */
+    public SharedValueCache(long budgetBytes, int stripes){
+        if(stripes < 1 || stripes > 1 << 16){
+            throw new IllegalArgumentException(
+                    "Unsupported number of stripes.");
+        }
+        int count = Integer.highestOneBit(stripes) == stripes ? stripes 
+                : Integer.highestOneBit(stripes) << 1;
+        this.stripes = new ValueCache[count];
+        for(int s = 0; s < count; s++){
+            this.stripes[s] = new ValueCache(budgetBytes / count);
+        }
+        versions = new AtomicIntegerArray(count * VERSION_STRIDE);
+        mask = count - 1;
+    }
+    
+    /**
+     * Looks up the value stored for a position.
+     * @param hash The position hash.
+     * @param check The position check.
+     * @return The value, or null if none is stored.
+     */
+    public GameValue get(long hash, long check){
+        int s = stripe(hash);
+        int version = versions.get(s * VERSION_STRIDE);
+        if((version & 1) == 0){
+            GameValue value = stripes[s].peek(hash, check);
+            VarHandle.acquireFence();
+            if(versions.get(s * VERSION_STRIDE) == version){
+                if(value == null){
+                    misses.increment();
+                }
+                else{
+                    hits.increment();
+                }
+                return value;
+            }
+        }
+        synchronized(stripes[s]){
+            return stripes[s].get(hash, check);
+        }
+    }
+    
+    /**
+     * Stores the value of a position, replacing any value already stored for
+     * it.
+     * @param hash The position hash.
+     * @param check The position check.
+     * @param value The value of the position.
+     */
+    public void put(long hash, long check, GameValue value){
+        int s = stripe(hash);
+        synchronized(stripes[s]){
+            versions.incrementAndGet(s * VERSION_STRIDE);
+            VarHandle.storeStoreFence();
+            stripes[s].put(hash, check, value);
+            versions.incrementAndGet(s * VERSION_STRIDE);
+        }
+    }
+    
+    /**
+     * Removes every entry, keeping the counters.
+     */
+    public void clear(){
+        for(int s = 0; s < stripes.length; s++){
+            synchronized(stripes[s]){
+                versions.incrementAndGet(s * VERSION_STRIDE);
+                VarHandle.storeStoreFence();
+                stripes[s].clear();
+                versions.incrementAndGet(s * VERSION_STRIDE);
+            }
+        }
+    }
+    
+    /**
+     * Returns the number of stripes.
+     * @return A power of two.
+     */
+    public int getStripeCount(){
+        return stripes.length;
+    }
+    
+    /**
+     * Returns the number of positions stored.
+     * @return A nonnegative integer.
+     */
+    public int size(){
+        int size = 0;
+        for(ValueCache stripe: stripes){
+            synchronized(stripe){
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+    
+    /**
+     * Returns the most positions the cache can hold within its budget.
+     * @return A positive integer.
+     */
+    public int capacity(){
+        return stripes.length * stripes[0].capacity();
+    }
+    
+    /**
+     * Returns the number of lookups that found a value.
+     * @return A nonnegative integer.
+     */
+    public long getHits(){
+        long total = hits.sum();
+        for(ValueCache stripe: stripes){
+            synchronized(stripe){
+                total += stripe.getHits();
+            }
+        }
+        return total;
+    }
+    
+    /**
+     * Returns the number of lookups that found nothing.
+     * @return A nonnegative integer.
+     */
+    public long getMisses(){
+        long total = misses.sum();
+        for(ValueCache stripe: stripes){
+            synchronized(stripe){
+                total += stripe.getMisses();
+            }
+        }
+        return total;
+    }
+    
+    /**
+     * Returns the number of entries evicted to make room for others.
+     * @return A nonnegative integer.
+     */
+    public long getEvictions(){
+        long evictions = 0;
+        for(ValueCache stripe: stripes){
+            synchronized(stripe){
+                evictions += stripe.getEvictions();
+            }
+        }
+        return evictions;
+    }
+    
+    /**
+     * Returns the fraction of lookups that found a value.
+     * @return A number from 0 to 1, or 0 if nothing has been looked up.
+     */
+    public double getHitRate(){
+        long hits = getHits();
+        long lookups = hits + getMisses();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+    
+    /**
+     * Finds the stripe a key is kept in.
+     * @param hash The position hash.
+     * @return The index of the stripe.
+     */
+    private int stripe(long hash){
+        return (int) (hash >>> 32) & mask;
+    }
+}
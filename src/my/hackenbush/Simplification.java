@@ -0,0 +1,616 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.hackenbush;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import my.combinatorialgame.GameValue;
+
+/**
+ * Simplification rewrites a Hackenbush position into a smaller one of the same
+ * value, and keeps count of what it changed. Sticks not joined to the ground
+ * are dropped, and loops at the ground are replaced by a stalk of their total.
+ * In each component, every branch, the part of the graph beyond a vertex
+ * other than the ground that it meets only at that vertex, is replaced by a
+ * single stalk of the same value. A branch of one color, whatever its cycles
+ * and multiple edges, is worth one move for each stick, a tree is valued by
+ * Hackentree, and anything else is searched. A component of one color becomes
+ * a stalk in the same way.
+ *
+ * The ground is a single vertex, so the places where a position touches the
+ * ground are always joined already. Cycles and multiple edges that are not
+ * inside a branch are kept, since their value depends on what hangs from them.
+ * @author Madeleine Bulkow
+ */
+public class Simplification {
+    
+    private final HackenbushSolver solver;
+    private final long maxSearchSticks;
+    private final Hackenbush position;
+    private long sticksBefore;
+    private long sticksAfter;
+    private long detachedSticks;
+    private int groundLoops;
+    private int loops;
+    private int singleColorParts;
+    private int treeBranches;
+    private int searchedBranches;
+    private int keptBranches;
+    
+    /**
+     * Constructor
+     *
+     * @param original A Hackenbush game. It is not changed.
+     */
+    public Simplification(Hackenbush original){
+        this(original, new HackenbushSolver(), Long.MAX_VALUE);
+    }
+    
+    /**
+     * Constructor
+     *
+     * @param original A Hackenbush game. It is not changed.
+     * @param solver The solver used to value branches that are neither trees
+     * nor of one color.
+     * @param maxSearchSticks The most sticks such a branch may have and still
+     * be searched. Larger ones are left in place.
+     */
+    public Simplification(Hackenbush original, HackenbushSolver solver,
+            long maxSearchSticks){
+        this(original.edges, solver, maxSearchSticks);
+    }
+    
+    /**
+     * Constructor
+     *
+     * @param edges The edges of a position, with vertex 0 as the ground. They
+     * are not changed.
+     * @param solver The solver used to value branches that are neither trees
+     * nor of one color.
+     * @param maxSearchSticks The most sticks such a branch may have and still
+     * be searched. Larger ones are left in place.
+     */
+    Simplification(EdgeStore edges, HackenbushSolver solver,
+            long maxSearchSticks){
+        this.solver = solver;
+        this.maxSearchSticks = maxSearchSticks;
+        sticksBefore = edges.getEdgeTotal('r') + edges.getEdgeTotal('b');
+        
+        int groundValue = 0;
+        if(edges.getSize() > 0){
+            groundValue = edges.getEdges('b', 0, 0) - edges.getEdges('r', 0, 0);
+            groundLoops = edges.getEdges('b', 0, 0) + edges.getEdges('r', 0, 0);
+        }
+        long attached = groundLoops;
+        List<EdgeStore> parts = new ArrayList<>();
+        int size = 1;
+        for(EdgeStore component: HackenbushSolver.splitAtGround(edges)){
+            attached += component.getEdgeTotal('r')
+                    + component.getEdgeTotal('b');
+            EdgeStore part = singleColorStalk(component);
+            if(part == null){
+                part = collapseBranches(component);
+            }
+            parts.add(part);
+            size += part.getSize() - 1;
+        }
+        detachedSticks = sticksBefore - attached;
+        char[] groundStalk = groundValue == 0 ? new char[0]
+                : HackenbushSolver.stalkColors(new GameValue(groundValue, 1));
+        size += groundStalk.length;
+        
+        // Join the parts again at the ground, renumbering each after the last.
+        SparseEdgeStore reduced = new SparseEdgeStore(size);
+        int offset = 0;
+        for(EdgeStore part: parts){
+            int partSize = part.getSize();
+            for(int i = 0; i < partSize; i++){
+                int degree = part.getDegree(i);
+                for(int slot = 0; slot < degree; slot++){
+                    int j = part.getNeighbor(i, slot);
+                    if(j < i){
+                        continue;
+                    }
+                    int from = i == 0 ? 0 : i + offset;
+                    int to = j == 0 ? 0 : j + offset;
+                    reduced.addEdges('r', from, to,
+                            part.getEdgesAt('r', i, slot));
+                    reduced.addEdges('b', from, to,
+                            part.getEdgesAt('b', i, slot));
+                }
+            }
+            offset += partSize - 1;
+        }
+        int below = 0;
+        for(char color: groundStalk){
+            reduced.addEdges(color, below, ++offset, 1);
+            below = offset;
+        }
+        sticksAfter = reduced.getEdgeTotal('r') + reduced.getEdgeTotal('b');
+        position = new Hackenbush(reduced);
+    }
+    
+    /**
+     * Returns the simplified position, which has the same value as the
+     * original.
+     * @return A new Hackenbush game.
+     */
+    public Hackenbush getPosition(){
+        return position;
+    }
+    
+    /**
+     * Evaluates whether the simplified position is a tree.
+     * @return "true" if it has no cycles, loops or multiple edges.
+     */
+    public boolean isTree(){
+        return position.isTree();
+    }
+    
+    /**
+     * Returns the number of sticks in the original position.
+     * @return A nonnegative integer.
+     */
+    public long getSticksBefore(){
+        return sticksBefore;
+    }
+    
+    /**
+     * Returns the number of sticks in the simplified position.
+     * @return A nonnegative integer.
+     */
+    public long getSticksAfter(){
+        return sticksAfter;
+    }
+    
+    /**
+     * Returns the number of sticks dropped because they were not joined to
+     * the ground.
+     * @return A nonnegative integer.
+     */
+    public long getDetachedSticks(){
+        return detachedSticks;
+    }
+    
+    /**
+     * Returns the number of loops, at the ground or elsewhere, that were
+     * replaced by stalks.
+     * @return A nonnegative integer.
+     */
+    public int getLoops(){
+        return groundLoops + loops;
+    }
+    
+    /**
+     * Returns the number of branches and components of a single color that
+     * were replaced by stalks.
+     * @return A nonnegative integer.
+     */
+    public int getSingleColorParts(){
+        return singleColorParts;
+    }
+    
+    /**
+     * Returns the number of branches that were trees and were replaced by
+     * stalks.
+     * @return A nonnegative integer.
+     */
+    public int getTreeBranches(){
+        return treeBranches;
+    }
+    
+    /**
+     * Returns the number of branches that had to be searched before they were
+     * replaced by stalks.
+     * @return A nonnegative integer.
+     */
+    public int getSearchedBranches(){
+        return searchedBranches;
+    }
+    
+    /**
+     * Returns the number of branches left in place because they were too
+     * large to search.
+     * @return A nonnegative integer.
+     */
+    public int getKeptBranches(){
+        return keptBranches;
+    }
+    
+    /**
+     * Describes what was simplified.
+     * @return A sentence for each kind of change made, and the number of
+     * sticks before and after.
+     */
+    public String printReport(){
+        StringBuilder report = new StringBuilder();
+        if(detachedSticks > 0){
+            report.append("Dropped ")
+                    .append(count(detachedSticks, "stick", "sticks"))
+                    .append(" not joined to the ground. ");
+        }
+        StringBuilder replaced = new StringBuilder();
+        listCount(replaced, getLoops(), "loop", "loops");
+        listCount(replaced, singleColorParts, "part of one color", 
+                "parts of one color");
+        listCount(replaced, treeBranches, "hanging tree", "hanging trees");
+        listCount(replaced, searchedBranches, "searched branch", 
+                "searched branches");
+        if(replaced.length() > 0){
+            report.append("Replaced ").append(replaced)
+                    .append(" by stalks. ");
+        }
+        if(keptBranches > 0){
+            report.append("Kept ")
+                    .append(count(keptBranches, "branch", "branches"))
+                    .append(" too large to search. ");
+        }
+        report.append(sticksBefore).append(" sticks before, ")
+                .append(sticksAfter).append(" after");
+        report.append(isTree() ? ", now a tree." : ".");
+        return report.toString();
+    }
+    
+    /**
+     * Writes a number followed by a noun in the right number.
+     * @param n A nonnegative integer.
+     * @param one The noun for a single thing.
+     * @param many The noun for any other number of things.
+     * @return The number and the noun.
+     */
+    private static String count(long n, String one, String many){
+        return n + " " + (n == 1 ? one : many);
+    }
+    
+    /**
+     * Adds a count to a list separated by commas, unless it is zero.
+     * @param list The list so far.
+     * @param n A nonnegative integer.
+     * @param one The noun for a single thing.
+     * @param many The noun for any other number of things.
+     */
+    private static void listCount(StringBuilder list, long n, String one, 
+            String many){
+        if(n == 0){
+            return;
+        }
+        if(list.length() > 0){
+            list.append(", ");
+        }
+        list.append(count(n, one, many));
+    }
+    
+    /**
+     * Replaces every branch of a component by a single stalk of the same
+     * value, as HackenbushSolver does before searching a component.
+     * @param component The edges of a component joined to the ground.
+     * @param solver The solver used to value branches that need searching.
+     * @return The same store if there were no branches to replace, or a new
+     * one.
+     */
+    static EdgeStore collapseBranches(EdgeStore component,
+            HackenbushSolver solver){
+        return new Simplification(solver).collapseBranches(component);
+    }
+    
+    /**
+     * Constructor for simplifying single components on behalf of a solver.
+     *
+     * @param solver The solver used to value branches that need searching.
+     */
+    private Simplification(HackenbushSolver solver){
+        this.solver = solver;
+        this.maxSearchSticks = Long.MAX_VALUE;
+        this.position = null;
+    }
+    
+    /**
+     * Replaces every branch of a component by a single stalk of the same value.
+     * Swapping a branch for another of equal value does not change the value
+     * of the game, since the difference of the two games is won by the second
+     * player mirroring moves outside the branches. Each branch is valued as a
+     * game of its own, grounded at the vertex it hangs from.
+     * @param component The edges of a component joined to the ground.
+     * @return The same store if there were no branches to replace, or a new
+     * one.
+     */
+    private EdgeStore collapseBranches(EdgeStore component){
+        int size = component.getSize();
+        
+        // Depth-first search from the ground for low points, finding each
+        // vertex whose subtree can only reach the rest through its parent.
+        int[] disc = new int[size];
+        int[] low = new int[size];
+        int[] parent = new int[size];
+        int[] nextSlot = new int[size];
+        int[] order = new int[size];
+        boolean[] branchRoot = new boolean[size];
+        Arrays.fill(disc, -1);
+        int[] stack = new int[size];
+        int depth = 0;
+        int time = 0;
+        stack[depth++] = 0;
+        disc[0] = 0;
+        order[time++] = 0;
+        boolean hasLoops = false;
+        while(depth > 0){
+            int node = stack[depth - 1];
+            if(nextSlot[node] < component.getDegree(node)){
+                int slot = nextSlot[node]++;
+                int neighbor = component.getNeighbor(node, slot);
+                int count = component.getEdgesAt('r', node, slot)
+                        + component.getEdgesAt('b', node, slot);
+                if(count == 0){
+                    continue;
+                }
+                if(neighbor == node){
+                    hasLoops = true;
+                }
+                else if(disc[neighbor] == -1){
+                    parent[neighbor] = node;
+                    disc[neighbor] = time;
+                    low[neighbor] = time;
+                    order[time++] = neighbor;
+                    stack[depth++] = neighbor;
+                }
+                else if(neighbor != parent[node] || count > 1){
+                    low[node] = Math.min(low[node], disc[neighbor]);
+                }
+            }
+            else{
+                depth--;
+                if(node != 0){
+                    int p = parent[node];
+                    low[p] = Math.min(low[p], low[node]);
+                    branchRoot[node] = p != 0 && low[node] >= disc[p];
+                }
+            }
+        }
+        
+        // Assign each vertex to the outermost branch containing it, if any.
+        int[] owner = new int[size];
+        boolean branches = false;
+        for(int k = 0; k < time; k++){
+            int node = order[k];
+            owner[node] = -1;
+            if(node == 0){
+                continue;
+            }
+            if(owner[parent[node]] != -1){
+                owner[node] = owner[parent[node]];
+            }
+            else if(branchRoot[node]){
+                owner[node] = node;
+                branches = true;
+            }
+        }
+        if(!branches && !hasLoops){
+            return component;
+        }
+        
+        // Value the branches and loops hanging from each remaining vertex.
+        // A branch too large to search gives its vertices back to the rest.
+        GameValue[] hanging = new GameValue[size];
+        int[] label = new int[size];
+        for(int k = 0; k < time; k++){
+            int node = order[k];
+            if(owner[node] == node){
+                GameValue value = valueBranch(extractBranch(component, node,
+                        parent[node], owner, order, k, time, label));
+                if(value != null){
+                    int p = parent[node];
+                    hanging[p] = hanging[p] == null ? value 
+                            : hanging[p].add(value);
+                    continue;
+                }
+                for(int m = k; m < time; m++){
+                    if(owner[order[m]] == node){
+                        owner[order[m]] = -1;
+                    }
+                }
+            }
+            if(owner[node] == -1 && node != 0){
+                int red = component.getEdges('r', node, node);
+                int blue = component.getEdges('b', node, node);
+                loops += red + blue;
+                if(red != blue){
+                    GameValue value = new GameValue(blue - red, 1);
+                    hanging[node] = hanging[node] == null ? value
+                            : hanging[node].add(value);
+                }
+            }
+        }
+        
+        // Renumber what is left, then add one stalk per vertex.
+        int kept = 0;
+        int extra = 0;
+        for(int k = 0; k < time; k++){
+            int node = order[k];
+            if(owner[node] == -1){
+                label[node] = kept++;
+                if(hanging[node] != null){
+                    extra += HackenbushSolver.stalkColors(hanging[node]).length;
+                }
+            }
+        }
+        SparseEdgeStore reduced = new SparseEdgeStore(kept + extra);
+        int next = kept;
+        for(int k = 0; k < time; k++){
+            int node = order[k];
+            if(owner[node] != -1){
+                continue;
+            }
+            int degree = component.getDegree(node);
+            for(int slot = 0; slot < degree; slot++){
+                int neighbor = component.getNeighbor(node, slot);
+                if(owner[neighbor] != -1 || label[neighbor] <= label[node]){
+                    continue;
+                }
+                reduced.addEdges('r', label[node], label[neighbor],
+                        component.getEdgesAt('r', node, slot));
+                reduced.addEdges('b', label[node], label[neighbor],
+                        component.getEdgesAt('b', node, slot));
+            }
+            if(hanging[node] != null){
+                int below = label[node];
+                for(char color: HackenbushSolver.stalkColors(hanging[node])){
+                    reduced.addEdges(color, below, next, 1);
+                    below = next++;
+                }
+            }
+        }
+        return reduced;
+    }
+    
+    /**
+     * Values a branch by the cheapest method that applies to it.
+     * @param branch The edges of the branch, grounded at the vertex it hangs
+     * from.
+     * @return The value of the branch, or null if it would have to be searched
+     * and has more than maxSearchSticks sticks.
+     */
+    private GameValue valueBranch(EdgeStore branch){
+        long red = branch.getEdgeTotal('r');
+        long blue = branch.getEdgeTotal('b');
+        if(red == 0 || blue == 0){
+            singleColorParts++;
+            return new GameValue(blue - red, 1);
+        }
+        if(HeightLayers.isTree(branch, 0)){
+            treeBranches++;
+            return new Hackentree(branch).getGameValue();
+        }
+        if(red + blue > maxSearchSticks){
+            keptBranches++;
+            return null;
+        }
+        searchedBranches++;
+        return solver.solve(branch);
+    }
+    
+    /**
+     * Replaces a component of a single color by a stalk. Neither player can
+     * ever cut the other's sticks in it, and its owner can always cut a stick
+     * that leaves the rest joined to the ground, so it is worth one move for
+     * each stick.
+     * @param component The edges of a component joined to the ground.
+     * @return A store holding the stalk, or null if the component has sticks
+     * of both colors or is a stalk already.
+     */
+    private EdgeStore singleColorStalk(EdgeStore component){
+        long red = component.getEdgeTotal('r');
+        long blue = component.getEdgeTotal('b');
+        if(red != 0 && blue != 0){
+            return null;
+        }
+        if(HeightLayers.isTree(component, 0) && isStalk(component)){
+            return null;
+        }
+        singleColorParts++;
+        int length = (int)(red + blue);
+        SparseEdgeStore stalk = new SparseEdgeStore(length + 1);
+        char color = red == 0 ? 'b' : 'r';
+        for(int k = 0; k < length; k++){
+            stalk.addEdges(color, k, k + 1, 1);
+        }
+        return stalk;
+    }
+    
+    /**
+     * Evaluates whether a tree is a single stalk.
+     * @param tree The edges of a tree.
+     * @return "true" if no vertex has more than two neighbors and the ground
+     * has one.
+     */
+    private static boolean isStalk(EdgeStore tree){
+        int size = tree.getSize();
+        for(int i = 0; i < size; i++){
+            int neighbors = 0;
+            int degree = tree.getDegree(i);
+            for(int slot = 0; slot < degree; slot++){
+                if(tree.getEdgesAt('r', i, slot) 
+                        + tree.getEdgesAt('b', i, slot) > 0){
+                    neighbors++;
+                }
+            }
+            if(neighbors > (i == 0 ? 1 : 2)){
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Copies one branch of a component into a store of its own, with the
+     * vertex it hangs from as the ground.
+     * @param component The edges of the component.
+     * @param root The first vertex of the branch in depth-first order.
+     * @param base The vertex the branch hangs from.
+     * @param owner The outermost branch containing each vertex.
+     * @param order The vertices in depth-first order.
+     * @param start The position of root in order.
+     * @param end The number of vertices in order.
+     * @param label Scratch space for renumbering vertices.
+     * @return A new EdgeStore holding the branch.
+     */
+    private static EdgeStore extractBranch(EdgeStore component, int root,
+            int base, int[] owner, int[] order, int start, int end,
+            int[] label){
+        int count = 1;
+        for(int k = start; k < end; k++){
+            if(owner[order[k]] == root){
+                label[order[k]] = count++;
+            }
+        }
+        SparseEdgeStore branch = new SparseEdgeStore(count);
+        for(int k = start; k < end; k++){
+            int node = order[k];
+            if(owner[node] != root){
+                continue;
+            }
+            int degree = component.getDegree(node);
+            for(int slot = 0; slot < degree; slot++){
+                int neighbor = component.getNeighbor(node, slot);
+                int other;
+                if(neighbor == base){
+                    other = 0;
+                }
+                else if(owner[neighbor] == root
+                        && label[neighbor] >= label[node]){
+                    other = label[neighbor];
+                }
+                else{
+                    continue;
+                }
+                branch.addEdges('r', label[node], other,
+                        component.getEdgesAt('r', node, slot));
+                branch.addEdges('b', label[node], other,
+                        component.getEdgesAt('b', node, slot));
+            }
+        }
+        return branch;
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.hackenbush;
+
+import java.util.Arrays;
+
+/**
+ * SparseEdgeStore keeps the sticks of a Hackenbush game in adjacency lists.
+ * Each vertex owns parallel arrays of neighbours and red and blue stick counts,
+ * so memory use and full scans are proportional to the number of vertices plus
+ * the number of occupied vertex pairs, rather than the square of the size.
+ * 
+ * Every slot also records the index of the matching slot in the neighbour's 
+ * list, which lets a pair be updated on both sides after scanning only the 
+ * shorter of the two lists, and lets empty slots be removed in constant time.
+ * @author Madeleine Bulkow
+ */
+public class SparseEdgeStore implements EdgeStore {
+    
+    private static final int[] EMPTY = new int[0];
+    
+    private final int size;
+    private final int[] degree;
+    private final int[][] neighbors;
+    private final int[][] twins;
+    private final int[][] redCounts;
+    private final int[][] blueCounts;
+    private long redTotal;
+    private long blueTotal;
+    
+    /**
+     * Constructor for a store with no sticks.
+     * 
+     * @param size A nonnegative integer corresponding to the number of nodes.
+     */
+    public SparseEdgeStore(int size){
+        if(size < 0){
+            throw new IllegalArgumentException("Size must be nonnegative.");
+        }
+        this.size = size;
+        degree = new int[size];
+        neighbors = new int[size][];
+        twins = new int[size][];
+        redCounts = new int[size][];
+        blueCounts = new int[size][];
+        for(int i = 0; i < size; i++){
+            neighbors[i] = EMPTY;
+            twins[i] = EMPTY;
+            redCounts[i] = EMPTY;
+            blueCounts[i] = EMPTY;
+        }
+    }
+    
+    /**
+     * Creates a store holding the sticks of two adjacency matrices. The 
+     * matrices are assumed to be square, symmetric and nonnegative.
+     * @param redEdges A size by size array of red stick counts.
+     * @param blueEdges A size by size array of blue stick counts.
+     * @return A new SparseEdgeStore.
+     */
+    public static SparseEdgeStore fromMatrices(int[][] redEdges, 
+            int[][] blueEdges){
+        SparseEdgeStore store = new SparseEdgeStore(redEdges.length);
+        for(int i = 0; i < store.size; i++){
+            for(int j = i; j < store.size; j++){
+                if(redEdges[i][j] > 0 || blueEdges[i][j] > 0){
+                    int slot = store.appendSlot(i, j);
+                    store.setCounts(i, slot, redEdges[i][j], blueEdges[i][j]);
+                }
+            }
+        }
+        return store;
+    }
+    
+    @Override
+    public int getSize(){
+        return size;
+    }
+    
+    @Override
+    public int getEdges(char color, int i, int j){
+        int slot = findSlot(i, j);
+        if(slot < 0){
+            return 0;
+        }
+        return getEdgesAt(color, i, slot);
+    }
+    
+    @Override
+    public void addEdges(char color, int i, int j, int count){
+        if(count < 0){
+            throw new IllegalArgumentException(
+                    "Edge numbers must be positive.");
+        }
+        if(count == 0 || (color != 'r' && color != 'b')){
+            return;
+        }
+        int slot = findSlot(i, j);
+        if(slot < 0){
+            slot = appendSlot(i, j);
+        }
+        if(color == 'r'){
+            setCounts(i, slot, redCounts[i][slot] + count, 
+                    blueCounts[i][slot]);
+        }
+        else{
+            setCounts(i, slot, redCounts[i][slot], 
+                    blueCounts[i][slot] + count);
+        }
+    }
+    
+    @Override
+    public int removeEdges(char color, int i, int j, int count){
+        int slot = findSlot(i, j);
+        if(slot < 0 || count <= 0){
+            return 0;
+        }
+        int red = redCounts[i][slot];
+        int blue = blueCounts[i][slot];
+        int removed;
+        if(color == 'r'){
+            removed = Math.min(count, red);
+            red -= removed;
+        }
+        else if(color == 'b'){
+            removed = Math.min(count, blue);
+            blue -= removed;
+        }
+        else{
+            return 0;
+        }
+        setCounts(i, slot, red, blue);
+        if(red == 0 && blue == 0){
+            unlink(i, slot);
+        }
+        return removed;
+    }
+    
+    @Override
+    public int getDegree(int node){
+        return degree[node];
+    }
+    
+    @Override
+    public int getNeighbor(int node, int slot){
+        return neighbors[node][slot];
+    }
+    
+    @Override
+    public int getEdgesAt(char color, int node, int slot){
+        if(color == 'r'){
+            return redCounts[node][slot];
+        }
+        else if(color == 'b'){
+            return blueCounts[node][slot];
+        }
+        return 0;
+    }
+    
+    @Override
+    public long getEdgeTotal(char color){
+        if(color == 'r'){
+            return redTotal;
+        }
+        else if(color == 'b'){
+            return blueTotal;
+        }
+        return 0;
+    }
+    
+    @Override
+    public SparseEdgeStore copy(){
+        SparseEdgeStore store = new SparseEdgeStore(size);
+        for(int i = 0; i < size; i++){
+            int d = degree[i];
+            if(d > 0){
+                store.degree[i] = d;
+                store.neighbors[i] = Arrays.copyOf(neighbors[i], d);
+                store.twins[i] = Arrays.copyOf(twins[i], d);
+                store.redCounts[i] = Arrays.copyOf(redCounts[i], d);
+                store.blueCounts[i] = Arrays.copyOf(blueCounts[i], d);
+            }
+        }
+        store.redTotal = redTotal;
+        store.blueTotal = blueTotal;
+        return store;
+    }
+    
+    /**
+     * Finds the slot holding vertex j in the list of vertex i, scanning 
+     * whichever of the two lists is shorter.
+     * @param i An integer between 0 and (size - 1) inclusive.
+     * @param j An integer between 0 and (size - 1) inclusive.
+     * @return The slot of j among the neighbours of i, or -1 if there is none.
+     */
+    private int findSlot(int i, int j){
+        if(i < 0 || j < 0 || i >= size || j >= size){
+            return -1;
+        }
+        if(degree[i] <= degree[j]){
+            int[] list = neighbors[i];
+            for(int s = degree[i] - 1; s >= 0; s--){
+                if(list[s] == j){
+                    return s;
+                }
+            }
+        }
+        else{
+            int[] list = neighbors[j];
+            for(int s = degree[j] - 1; s >= 0; s--){
+                if(list[s] == i){
+                    return twins[j][s];
+                }
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Adds an empty slot joining vertices i and j to both of their lists.
+     * @param i An integer between 0 and (size - 1) inclusive.
+     * @param j An integer between 0 and (size - 1) inclusive.
+     * @return The new slot among the neighbours of i.
+     */
+    private int appendSlot(int i, int j){
+        int si = grow(i);
+        neighbors[i][si] = j;
+        if(i == j){
+            twins[i][si] = si;
+            return si;
+        }
+        int sj = grow(j);
+        neighbors[j][sj] = i;
+        twins[i][si] = sj;
+        twins[j][sj] = si;
+        return si;
+    }
+    
+    /**
+     * Reserves one more slot at the end of the list of a vertex.
+     * @param node An integer between 0 and (size - 1) inclusive.
+     * @return The index of the reserved slot.
+     */
+    private int grow(int node){
+        int d = degree[node];
+        if(d == neighbors[node].length){
+            int capacity = Math.max(2, 2 * d);
+            neighbors[node] = Arrays.copyOf(neighbors[node], 
+                    capacity);
+            twins[node] = Arrays.copyOf(twins[node], capacity);
+            redCounts[node] = Arrays.copyOf(redCounts[node], 
+                    capacity);
+            blueCounts[node] = Arrays.copyOf(blueCounts[node], 
+                    capacity);
+        }
+        degree[node] = d + 1;
+        return d;
+    }
+    
+    /**
+     * Sets the stick counts of a slot on both sides, keeping totals current.
+     * @param i An integer between 0 and (size - 1) inclusive.
+     * @param slot A slot among the neighbours of i.
+     * @param red The new number of red sticks.
+     * @param blue The new number of blue sticks.
+     */
+    private void setCounts(int i, int slot, int red, int blue){
+        redTotal += red - redCounts[i][slot];
+        blueTotal += blue - blueCounts[i][slot];
+        redCounts[i][slot] = red;
+        blueCounts[i][slot] = blue;
+        int j = neighbors[i][slot];
+        if(j != i){
+            int twin = twins[i][slot];
+            redCounts[j][twin] = red;
+            blueCounts[j][twin] = blue;
+        }
+    }
+    
+    /**
+     * Removes an empty slot from both of the lists it belongs to.
+     * @param i An integer between 0 and (size - 1) inclusive.
+     * @param slot A slot among the neighbours of i.
+     */
+    private void unlink(int i, int slot){
+        int j = neighbors[i][slot];
+        int twin = twins[i][slot];
+        removeSlot(i, slot);
+        if(j != i){
+            removeSlot(j, twin);
+        }
+    }
+    
+    /**
+     * Removes a slot from the list of a single vertex by moving the last slot
+     * into its place.
+     * @param node An integer between 0 and (size - 1) inclusive.
+     * @param slot A slot among the neighbours of node.
+     */
+    private void removeSlot(int node, int slot){
+        int last = --degree[node];
+        if(slot != last){
+            int moved = neighbors[node][last];
+            neighbors[node][slot] = moved;
+            redCounts[node][slot] = redCounts[node][last];
+            blueCounts[node][slot] = blueCounts[node][last];
+            if(moved == node){
+                twins[node][slot] = slot;
+            }
+            else{
+                twins[node][slot] = twins[node][last];
+                twins[moved][twins[node][last]] = slot;
+            }
+        }
+        redCounts[node][last] = 0;
+        blueCounts[node][last] = 0;
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.hackenbush;
+
+import java.util.Arrays;
+import my.combinatorialgame.GameValue;
+
+/**
+ * ValueCache holds the values of positions in memory, keyed on the position
+ * hash and position check kept by Hackenbush, within a fixed budget of bytes.
+ * Entries are kept in parallel arrays of primitives rather than as objects, 
+ * so that a lookup allocates nothing but the value it returns. Only values 
+ * whose numerator and denominator fit in a long are kept, which is all but
+ * the rarest, so every entry takes exactly ENTRY_BYTES bytes.
+ * 
+ * The cache is split into sets of WAYS entries, and a key may only be kept in
+ * the set its hash picks. The arrays start small and double whenever a set 
+ * fills up. They stop at the largest size for which the old and the new 
+ * arrays together fit in the budget while entries are moved across, so the
+ * cache never holds more than the budget. Each entry counts how often it has 
+ * been used and when it was last used. When a set is full and the cache has
+ * reached its budget, the entry used least often is evicted, and among those
+ * the one used least recently. Every time as many entries have been stored 
+ * as the cache can hold, all counts are halved, so that entries which were 
+ * used often long ago make way for newer ones. A ValueCache is not safe to 
+ * use from several threads at once.
+ * @author Madeleine Bulkow
+ */
+public class ValueCache {
+    
+    /**
+     * The number of bytes the arrays hold for each entry.
+     */
+    public static final int ENTRY_BYTES = 30;
+    
+    /**
+     * The number of entries in each set.
+     */
+    public static final int WAYS = 8;
+    
+    private static final int FIRST_SETS = 64;
+    private static final int MAX_COUNT = 127;
+    
+    private final int maxSets;
+    private int mask;
+    private long[] hashes;
+    private long[] checks;
+    private long[] nums;
+    private byte[] exps;
+    private int[] stamps;
+    private byte[] counts;
+    private int size;
+    private int clock;
+    private int storedSinceAging;
+    private long hits;
+    private long misses;
+    private long evictions;
+    
+    /**
+     * Constructor
+     * 
+     * @param budgetBytes The most bytes the cache may take, at least 
+     * WAYS * ENTRY_BYTES.
+     */
+    public ValueCache(long budgetBytes){
+        if(budgetBytes < WAYS * ENTRY_BYTES){
+            throw new IllegalArgumentException("Budget too small for a set.");
+        }
+        long sets = Math.min(budgetBytes / (WAYS * ENTRY_BYTES), 
+                Integer.MAX_VALUE / WAYS);
+        int most = Integer.highestOneBit((int) sets);
+        if(most > FIRST_SETS 
+                && 3L * most / 2 * WAYS * ENTRY_BYTES > budgetBytes){
+            most /= 2;
+        }
+        maxSets = most;
+        allocate(Math.min(FIRST_SETS, maxSets));
+    }
+    
+    /**
+     * Looks up the value stored for a position.
+     * @param hash The position hash.
+     * @param check The position check.
+     * @return The value, or null if none is stored.
+     */
+    public GameValue get(long hash, long check){
+        int slot = find(hash, check);
+        if(slot < 0){
+            misses++;
+            return null;
+        }
+        hits++;
+        if(counts[slot] < MAX_COUNT){
+            counts[slot]++;
+        }
+        stamps[slot] = ++clock;
+        return new GameValue(nums[slot], 1L << exps[slot]);
+    }
+    
+    /**
+     * Looks up the value stored for a position without counting the lookup
+     * or marking the entry as used, for SharedValueCache to call without its
+     * lock. A store may run at the same time, so what this returns is only
+     * to be trusted if no store did, and the arrays may be replaced midway, 
+     * so every index is checked against the array it reads.
+     * @param hash The position hash.
+     * @param check The position check.
+     * @return The value, or null if none was found.
+     */
+    GameValue peek(long hash, long check){
+        long[] peekHashes = hashes;
+        long[] peekChecks = checks;
+        long[] peekNums = nums;
+        byte[] peekExps = exps;
+        byte[] peekCounts = counts;
+        int start = ((int) hash & mask) * WAYS;
+        int end = start + WAYS;
+        if(end > peekHashes.length || end > peekChecks.length 
+                || end > peekNums.length || end > peekExps.length 
+                || end > peekCounts.length){
+            return null;
+        }
+        for(int slot = start; slot < end; slot++){
+            if(peekCounts[slot] != 0 && peekHashes[slot] == hash 
+                    && peekChecks[slot] == check){
+                int exp = peekExps[slot];
+                return exp < 0 || exp > 62 ? null 
+                        : new GameValue(peekNums[slot], 1L << exp);
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Stores the value of a position, replacing any value already stored for
+     * it. If the set the position belongs in is full, another entry is 
+     * evicted. A value that does not fit in a long is not stored.
+     * @param hash The position hash.
+     * @param check The position check.
+     * @param value The value of the position.
+     */
+    public void put(long hash, long check, GameValue value){
+        if(!value.fitsInLong()){
+            return;
+        }
+        int slot = find(hash, check);
+        if(slot < 0){
+            slot = claim(hash, check);
+        }
+        stamps[slot] = ++clock;
+        nums[slot] = value.getNum();
+        exps[slot] = (byte) value.getExponent();
+    }
+    
+    /**
+     * Removes every entry, keeping the counters.
+     */
+    public void clear(){
+        Arrays.fill(counts, (byte) 0);
+        size = 0;
+        storedSinceAging = 0;
+    }
+    
+    /**
+     * Returns the number of positions stored.
+     * @return A nonnegative integer.
+     */
+    public int size(){
+        return size;
+    }
+    
+    /**
+     * Returns the most positions the cache can hold within its budget.
+     * @return A positive integer.
+     */
+    public int capacity(){
+        return maxSets * WAYS;
+    }
+    
+    /**
+     * Returns the number of lookups that found a value.
+     * @return A nonnegative integer.
+     */
+    public long getHits(){
+        return hits;
+    }
+    
+    /**
+     * Returns the number of lookups that found nothing.
+     * @return A nonnegative integer.
+     */
+    public long getMisses(){
+        return misses;
+    }
+    
+    /**
+     * Returns the number of entries evicted to make room for others.
+     * @return A nonnegative integer.
+     */
+    public long getEvictions(){
+        return evictions;
+    }
+    
+    /**
+     * Returns the fraction of lookups that found a value.
+     * @return A number from 0 to 1, or 0 if nothing has been looked up.
+     */
+    public double getHitRate(){
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+    
+    /**
+     * Finds the slot holding a key.
+     * @param hash The position hash.
+     * @param check The position check.
+     * @return The slot, or -1 if the key is not stored.
+     */
+    private int find(long hash, long check){
+        int start = ((int) hash & mask) * WAYS;
+        for(int slot = start; slot < start + WAYS; slot++){
+            if(counts[slot] != 0 && hashes[slot] == hash 
+                    && checks[slot] == check){
+                return slot;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Takes a slot for a key that is not stored. If its set is full, the 
+     * arrays are doubled if the budget allows it, and otherwise the entry 
+     * used least often and then least recently is evicted.
+     * @param hash The position hash.
+     * @param check The position check.
+     * @return The slot, holding the key with a count of one.
+     */
+    private int claim(long hash, long check){
+        int start = ((int) hash & mask) * WAYS;
+        int victim = -1;
+        for(int slot = start; slot < start + WAYS; slot++){
+            if(counts[slot] == 0){
+                victim = slot;
+                break;
+            }
+            if(victim < 0 || counts[slot] < counts[victim] 
+                    || (counts[slot] == counts[victim] 
+                    && stamps[slot] - stamps[victim] < 0)){
+                victim = slot;
+            }
+        }
+        if(counts[victim] == 0){
+            size++;
+        }
+        else if(mask + 1 < maxSets){
+            allocate((mask + 1) * 2);
+            return claim(hash, check);
+        }
+        else{
+            evictions++;
+        }
+        hashes[victim] = hash;
+        checks[victim] = check;
+        counts[victim] = 1;
+        if(++storedSinceAging >= capacity()){
+            age();
+        }
+        return victim;
+    }
+    
+    /**
+     * Halves the count of every entry, keeping each at one or more.
+     */
+    private void age(){
+        for(int slot = 0; slot < counts.length; slot++){
+            if(counts[slot] > 1){
+                counts[slot] >>= 1;
+            }
+        }
+        storedSinceAging = 0;
+    }
+    
+    /**
+     * Replaces the arrays with ones of a given number of sets, moving every
+     * entry into its set in the new arrays.
+     * @param sets A power of two, at least the current number of sets.
+     */
+    private void allocate(int sets){
+        long[] oldHashes = hashes;
+        long[] oldChecks = checks;
+        long[] oldNums = nums;
+        byte[] oldExps = exps;
+        int[] oldStamps = stamps;
+        byte[] oldCounts = counts;
+        mask = sets - 1;
+        hashes = new long[sets * WAYS];
+        checks = new long[sets * WAYS];
+        nums = new long[sets * WAYS];
+        exps = new byte[sets * WAYS];
+        stamps = new int[sets * WAYS];
+        counts = new byte[sets * WAYS];
+        if(oldCounts == null){
+            return;
+        }
+        int[] filled = new int[sets];
+        for(int old = 0; old < oldCounts.length; old++){
+            if(oldCounts[old] == 0){
+                continue;
+            }
+            int set = (int) oldHashes[old] & mask;
+            int slot = set * WAYS + filled[set]++;
+            hashes[slot] = oldHashes[old];
+            checks[slot] = oldChecks[old];
+            nums[slot] = oldNums[old];
+            exps[slot] = oldExps[old];
+            stamps[slot] = oldStamps[old];
+            counts[slot] = oldCounts[old];
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.hackenbushapp;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import my.combinatorialgame.GameValue;
+import my.combinatorialgame.Outcome;
+import my.hackenbush.*;
+import my.hackenbushgenerator.EdgeListFile;
+import my.hackenbushgenerator.PositionFile;
+
+/**
+ * BatchEvaluate values positions read from a file or standard input without
+ * opening a window, so it can run on machines with no display. Positions are
+ * read in the EdgeListFile format, several to a stream separated by blank 
+ * lines, or from a PositionFile, which is memory-mapped and decoded one 
+ * position at a time. Each is valued by a ComponentSum on a pool of worker 
+ * threads, all of them sharing one SharedValueCache. 
+ * Where a component has too many sticks to search, the outcome class is 
+ * looked for within a time budget instead, by an OutcomeSolver kept for each
+ * worker thread, unless the position has more than OutcomeSolver.MAX_VERTICES
+ * vertices.
+ * 
+ * Only a fixed number of positions are read ahead of the oldest one not yet
+ * written, so a stream of any length is valued in bounded memory. For each
+ * position a line is written, in the order the positions were read, holding 
+ * its index from 0, its value or "?" if it could not be found, its outcome 
+ * class or "?", and the microseconds it took, separated by tabs. A position 
+ * that cannot be read or valued gets its index and an error message instead.
+ * With -Dhackenbush.metrics=true, the Metrics report is printed to standard 
+ * error at the end.
+ * @author Madeleine Bulkow
+ */
+public class BatchEvaluate {
+    
+    /**
+     * @param args Optionally the input file, the output file, the number of
+     * worker threads, the most sticks a component may have and still be 
+     * searched, and the milliseconds allowed for each outcome search, in 
+     * that order. An input or output of "-" means standard input or output.
+     */
+    public static void main(String[] args) throws IOException, 
+            InterruptedException {
+        String input = args.length > 0 ? args[0] : "-";
+        String output = args.length > 1 ? args[1] : "-";
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) 
+                : Runtime.getRuntime().availableProcessors();
+        long maxSearchSticks = args.length > 3 ? Long.parseLong(args[3]) : 24;
+        long budgetMillis = args.length > 4 ? Long.parseLong(args[4]) : 1000;
+        
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        SharedValueCache cache = 
+                new SharedValueCache(HackenbushSolver.DEFAULT_CACHE_BYTES);
+        try(PrintWriter writer = new PrintWriter(new BufferedWriter(
+                output.equals("-") ? new OutputStreamWriter(System.out) 
+                        : new FileWriter(output)))){
+            if(!input.equals("-") 
+                    && PositionFile.isPositionFile(new File(input))){
+                try(PositionFile positions = 
+                        new PositionFile(new File(input))){
+                    run(new Source(){
+                        private int next;
+                        
+                        @Override
+                        Hackenbush next() throws IOException{
+                            if(next == positions.getPositionCount()){
+                                return null;
+                            }
+                            try{
+                                return positions.get(next++);
+                            }
+                            catch(IOException e){
+                                throw new IllegalArgumentException(
+                                        e.getMessage());
+                            }
+                        }
+                    }, writer, pool, cache, 4 * threads, maxSearchSticks, 
+                            budgetMillis);
+                }
+            }
+            else{
+                try(BufferedReader reader = new BufferedReader(
+                        input.equals("-") ? new InputStreamReader(System.in) 
+                                : new FileReader(input))){
+                    final String name = input;
+                    run(new Source(){
+                        @Override
+                        Hackenbush next() throws IOException{
+                            return EdgeListFile.read(reader, name);
+                        }
+                    }, writer, pool, cache, 4 * threads, maxSearchSticks, 
+                            budgetMillis);
+                }
+            }
+        }
+        finally{
+            pool.shutdown();
+        }
+        if(Metrics.isEnabled()){
+            System.err.print(Metrics.report());
+        }
+    }
+    
+    /**
+     * Values every position from a source and writes a line for each.
+     * @param source Where the positions come from.
+     * @param writer Where to write the results.
+     * @param pool The worker threads.
+     * @param cache The cache shared by every position's ComponentSum.
+     * @param window The most positions read but not yet written.
+     * @param maxSearchSticks The most sticks a component may have and still be
+     * searched.
+     * @param budgetMillis The milliseconds allowed for each outcome search.
+     */
+    private static void run(Source source, PrintWriter writer, 
+            final ForkJoinPool pool, final SharedValueCache cache, 
+            int window, final long maxSearchSticks, 
+            final long budgetMillis) 
+            throws IOException, InterruptedException{
+        final ThreadLocal<OutcomeSolver> solvers = 
+                new ThreadLocal<OutcomeSolver>(){
+            @Override
+            protected OutcomeSolver initialValue(){
+                return new OutcomeSolver(budgetMillis);
+            }
+        };
+        ArrayDeque<Future<String>> pending = new ArrayDeque<>();
+        long index = 0;
+        while(true){
+            final long number = index;
+            Future<String> result;
+            try{
+                final Hackenbush position = source.next();
+                if(position == null){
+                    break;
+                }
+                result = pool.submit(new Callable<String>(){
+                    @Override
+                    public String call(){
+                        try{
+                            return evaluate(number, position, pool, 
+                                    cache, maxSearchSticks, solvers.get());
+                        }
+                        catch(RuntimeException e){
+                            return number + "\terror: " + e;
+                        }
+                    }
+                });
+            }
+            catch(IllegalArgumentException e){
+                result = CompletableFuture.completedFuture(
+                        number + "\terror: " + e.getMessage());
+            }
+            pending.add(result);
+            index++;
+            if(pending.size() >= window){
+                write(pending.remove(), index - window, writer);
+            }
+        }
+        while(!pending.isEmpty()){
+            long oldest = index - pending.size();
+            write(pending.remove(), oldest, writer);
+        }
+    }
+    
+    /**
+     * Values one position.
+     * @param index The index of the position in the stream.
+     * @param position The position.
+     * @param pool The pool to value its components in.
+     * @param cache The cache shared by every position's ComponentSum.
+     * @param maxSearchSticks The most sticks a component may have and still be
+     * searched.
+     * @param solver The outcome solver of the thread valuing the position.
+     * @return The line to write for the position.
+     */
+    private static String evaluate(long index, Hackenbush position, 
+            ForkJoinPool pool, SharedValueCache cache, long maxSearchSticks, 
+            OutcomeSolver solver){
+        long start = System.nanoTime();
+        GameValue value = new ComponentSum(position, maxSearchSticks, pool, 
+                cache).getGameValue();
+        Outcome outcome = value != null ? Outcome.of(value) 
+                : position.getSize() > OutcomeSolver.MAX_VERTICES ? null 
+                : solver.solve(position);
+        long micros = (System.nanoTime() - start) / 1000;
+        return index + "\t" + (value == null ? "?" : value.printValue()) 
+                + "\t" + (outcome == null ? "?" : outcome.toString()) 
+                + "\t" + micros;
+    }
+    
+    /**
+     * Waits for a result and writes it.
+     * @param result The result of one position.
+     * @param index The index of the position, for the line written if it 
+     * failed.
+     * @param writer Where to write it.
+     */
+    private static void write(Future<String> result, long index, 
+            PrintWriter writer) throws InterruptedException{
+        try{
+            writer.println(result.get());
+        }
+        catch(ExecutionException e){
+            writer.println(index + "\terror: " + e.getCause());
+        }
+    }
+    
+    /**
+     * Source hands out positions one at a time, in order.
+     */
+    private abstract static class Source {
+        
+        /**
+         * Returns the next position.
+         * @return A new Hackenbush, or null if there are no more.
+         * @throws IOException If the positions cannot be read.
+         * @throws IllegalArgumentException If the next position is not 
+         * valid. The one after it can still be asked for.
+         */
+        abstract Hackenbush next() throws IOException;
+    }
+}
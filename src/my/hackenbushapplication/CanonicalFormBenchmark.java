@@ -0,0 +1,142 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.hackenbushapp;
+
+import java.util.Random;
+import my.hackenbush.*;
+
+/**
+ * CanonicalFormBenchmark solves randomly renumbered copies of random cyclic
+ * positions twice, once with the solver keying its table on canonical forms
+ * and once without, and prints how many positions each had to search and how
+ * often each found a position in its table.
+ * @author Madeleine Bulkow
+ */
+public class CanonicalFormBenchmark {
+
+    /**
+     * @param args Optionally the number of positions, the number of
+     * renumberings of each, the number of vertices and the number of sticks,
+     * in that order.
+     */
+    public static void main(String[] args) {
+        int positions = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int copies = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int size = args.length > 2 ? Integer.parseInt(args[2]) : 7;
+        int sticks = args.length > 3 ? Integer.parseInt(args[3]) : 11;
+
+        Random random = new Random(2018);
+        Hackenbush[] games = new Hackenbush[positions * copies];
+        for(int p = 0; p < positions; p++){
+            int[][][] original = randomPosition(random, size, sticks);
+            for(int c = 0; c < copies; c++){
+                int[][][] relabelled = relabel(random, original);
+                games[p * copies + c] = new Hackenbush(size, relabelled[0],
+                        relabelled[1]);
+            }
+        }
+
+        run("plain keys", new HackenbushSolver(false), games);
+        run("canonical keys", new HackenbushSolver(true), games);
+    }
+
+    /**
+     * Solves every game with one solver and prints what it took.
+     * @param name A name for the run.
+     * @param solver A fresh solver.
+     * @param games The games to solve.
+     */
+    private static void run(String name, HackenbushSolver solver,
+            Hackenbush[] games){
+        long start = System.nanoTime();
+        for(Hackenbush game: games){
+            solver.solve(game);
+        }
+        long millis = (System.nanoTime() - start) / 1000000;
+        System.out.println(name + ": " + millis + " ms, "
+                + solver.getPositionsSearched() + " positions searched, "
+                + solver.getTableHits() + " table hits, "
+                + solver.getTableSize() + " table entries");
+    }
+
+    /**
+     * Makes a random position in which every vertex is joined to the ground.
+     * @param random The source of randomness.
+     * @param size The number of vertices, including the ground.
+     * @param sticks The number of sticks, at least size - 1.
+     * @return The red and blue adjacency matrices, in that order.
+     */
+    private static int[][][] randomPosition(Random random, int size,
+            int sticks){
+        int[][][] matrices = new int[2][size][size];
+        for(int k = 0; k < sticks; k++){
+            int i, j;
+            if(k < size - 1){
+                i = k + 1;
+                j = random.nextInt(k + 1);
+            }
+            else{
+                i = random.nextInt(size);
+                j = random.nextInt(size);
+            }
+            int color = random.nextInt(2);
+            matrices[color][i][j]++;
+            if(i != j){
+                matrices[color][j][i]++;
+            }
+        }
+        return matrices;
+    }
+
+    /**
+     * Renumbers every vertex of a position but the ground at random.
+     * @param random The source of randomness.
+     * @param matrices The red and blue adjacency matrices of a position.
+     * @return The renumbered matrices.
+     */
+    private static int[][][] relabel(Random random, int[][][] matrices){
+        int size = matrices[0].length;
+        int[] order = new int[size];
+        for(int i = 0; i < size; i++){
+            order[i] = i;
+        }
+        for(int i = size - 1; i > 1; i--){
+            int k = 1 + random.nextInt(i);
+            int swap = order[i];
+            order[i] = order[k];
+            order[k] = swap;
+        }
+        int[][][] relabelled = new int[2][size][size];
+        for(int color = 0; color < 2; color++){
+            for(int i = 0; i < size; i++){
+                for(int j = 0; j < size; j++){
+                    relabelled[color][order[i]][order[j]] =
+                            matrices[color][i][j];
+                }
+            }
+        }
+        return relabelled;
+    }
+}
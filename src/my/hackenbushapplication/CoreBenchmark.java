@@ -0,0 +1,300 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.hackenbushapp;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import my.combinatorialgame.GameValue;
+import my.hackenbush.*;
+
+/**
+ * CoreBenchmark times the operations the rest of the code leans on most: 
+ * building a Hackenbush from adjacency matrices, which checks that they are
+ * symmetric; copying one; cutting the stick at the foot of vertex 1, which 
+ * removes whatever it leaves hanging; finding the height of every vertex; 
+ * checking whether the graph is a tree; building a Hackentree; valuing its 
+ * HackentreeNode form from scratch; and adding up a list of values with the
+ * GameValue constructor. Each runs on stalks, bushy trees in which every 
+ * vertex has four children, and random graphs made of a random tree with 
+ * half as many sticks again added at random, at each of several sizes.
+ * 
+ * Each operation is run for a while to warm up and then measured over 
+ * several rounds. For each it prints the mean nanoseconds per operation and 
+ * the spread between the fastest and slowest round, and, where the JVM can
+ * count them, the bytes allocated per operation. Cutting a stick includes 
+ * copying the position first, whose cost is printed just before it, and 
+ * valuing the nodes includes marking every node stale first.
+ * @author Madeleine Bulkow
+ */
+public class CoreBenchmark {
+    
+    private static final String[] SHAPES = {"stalk", "bushy", "random"};
+    private static final int ROUNDS = 5;
+    
+    private static volatile Object sink;
+    
+    /**
+     * @param args Optionally the sizes to run, separated by commas, and the 
+     * milliseconds to spend on each operation, in that order.
+     */
+    public static void main(String[] args) {
+        String[] sizes = (args.length > 0 ? args[0] : "16,256,2048")
+                .split(",");
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+        
+        System.out.println(String.format("%-12s %-7s %6s %12s %10s %10s",
+                "operation", "shape", "size", "ns/op", "+/-", "B/op"));
+        for(String shape: SHAPES){
+            for(String size: sizes){
+                run(shape, Integer.parseInt(size), millis);
+            }
+        }
+    }
+    
+    /**
+     * Measures every operation on one shape and size of graph.
+     * @param shape One of SHAPES.
+     * @param size The number of vertices, including the ground.
+     * @param millis The milliseconds to spend on each operation.
+     */
+    private static void run(String shape, int size, long millis){
+        Random random = new Random(2018);
+        final int[][][] matrices = randomGraph(random, shape, size);
+        final Hackenbush position = new Hackenbush(size, matrices[0], 
+                matrices[1]);
+        final EdgeStore edges = SparseEdgeStore.fromMatrices(matrices[0], 
+                matrices[1]);
+        final List<GameValue> values = new ArrayList<>();
+        for(int k = 0; k < size; k++){
+            values.add(new GameValue(random.nextInt(2001) - 1000, 
+                    1L << random.nextInt(20)));
+        }
+        
+        measure("construct", shape, size, millis, new Operation(){
+            @Override
+            Object run(){
+                return new Hackenbush(matrices[0].length, matrices[0], 
+                        matrices[1]);
+            }
+        });
+        measure("copy", shape, size, millis, new Operation(){
+            @Override
+            Object run(){
+                return new Hackenbush(position);
+            }
+        });
+        measure("move", shape, size, millis, new Operation(){
+            @Override
+            Object run(){
+                Hackenbush copy = new Hackenbush(position);
+                copy.move(edges.getEdges('r', 0, 1) > 0 ? 'r' : 'b', 0, 1);
+                return copy;
+            }
+        });
+        measure("heights", shape, size, millis, new Operation(){
+            @Override
+            Object run(){
+                return HeightLayers.findHeights(edges, 0);
+            }
+        });
+        measure("isTree", shape, size, millis, new Operation(){
+            @Override
+            Object run(){
+                return HeightLayers.isTree(edges, 0);
+            }
+        });
+        measure("hackentree", shape, size, millis, new Operation(){
+            @Override
+            Object run(){
+                return new Hackentree(position);
+            }
+        });
+        HackentreeNode<Integer> root = new Hackentree(position).getRoot();
+        if(root != null){
+            final List<HackentreeNode<Integer>> nodes = listNodes(root);
+            measure("nodeValue", shape, size, millis, new Operation(){
+                @Override
+                Object run(){
+                    for(HackentreeNode<Integer> node: nodes){
+                        node.markDirty();
+                    }
+                    return nodes.get(0).getGameValue();
+                }
+            });
+        }
+        measure("sum", shape, size, millis, new Operation(){
+            @Override
+            Object run(){
+                return new GameValue(values);
+            }
+        });
+    }
+    
+    /**
+     * Warms an operation up, measures it and prints the result.
+     * @param name The name of the operation.
+     * @param shape The shape of graph it runs on.
+     * @param size The number of vertices in the graph.
+     * @param millis The milliseconds to spend on the operation.
+     * @param operation The operation.
+     */
+    private static void measure(String name, String shape, int size, 
+            long millis, Operation operation){
+        long end = System.nanoTime() + millis * 1000000 / (ROUNDS + 1);
+        while(System.nanoTime() < end){
+            sink = operation.run();
+        }
+        
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocation = 
+                threads instanceof com.sun.management.ThreadMXBean 
+                && ((com.sun.management.ThreadMXBean) threads)
+                        .isThreadAllocatedMemorySupported()
+                ? (com.sun.management.ThreadMXBean) threads : null;
+        long thread = Thread.currentThread().getId();
+        
+        double total = 0;
+        double fastest = Double.MAX_VALUE;
+        double slowest = 0;
+        long operations = 0;
+        long allocated = 0;
+        for(int round = 0; round < ROUNDS; round++){
+            long bytes = allocation == null ? 0 
+                    : allocation.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            end = start + millis * 1000000 / (ROUNDS + 1);
+            long count = 0;
+            long now;
+            do{
+                for(int k = 0; k < 16; k++){
+                    sink = operation.run();
+                }
+                count += 16;
+                now = System.nanoTime();
+            } while(now < end);
+            double perOperation = (double) (now - start) / count;
+            total += perOperation;
+            fastest = Math.min(fastest, perOperation);
+            slowest = Math.max(slowest, perOperation);
+            operations += count;
+            if(allocation != null){
+                allocated += allocation.getThreadAllocatedBytes(thread) 
+                        - bytes;
+            }
+        }
+        System.out.println(String.format("%-12s %-7s %6d %12.1f %10.1f %10s",
+                name, shape, size, total / ROUNDS, (slowest - fastest) / 2,
+                allocation == null ? "n/a" 
+                        : String.valueOf(allocated / operations)));
+    }
+    
+    /**
+     * Lists every node of a tree.
+     * @param root The root of the tree.
+     * @return The nodes, the root first.
+     */
+    private static List<HackentreeNode<Integer>> listNodes(
+            HackentreeNode<Integer> root){
+        List<HackentreeNode<Integer>> nodes = new ArrayList<>();
+        LinkedList<HackentreeNode<Integer>> stack = new LinkedList<>();
+        stack.push(root);
+        while(!stack.isEmpty()){
+            HackentreeNode<Integer> node = stack.pop();
+            nodes.add(node);
+            for(char color: new char[]{'r', 'b'}){
+                LinkedList<HackentreeNode<Integer>> children = 
+                        node.listChildren(color);
+                if(children != null){
+                    for(HackentreeNode<Integer> child: children){
+                        stack.push(child);
+                    }
+                }
+            }
+        }
+        return nodes;
+    }
+    
+    /**
+     * Makes a random graph of a given shape, in which vertex 1 stands on the
+     * ground.
+     * @param random The source of randomness.
+     * @param shape One of SHAPES.
+     * @param size The number of vertices, including the ground, at least 2.
+     * @return The red and blue adjacency matrices, in that order.
+     */
+    private static int[][][] randomGraph(Random random, String shape, 
+            int size){
+        int[][][] matrices = new int[2][size][size];
+        for(int i = 1; i < size; i++){
+            int parent;
+            if(shape.equals("stalk")){
+                parent = i - 1;
+            }
+            else if(shape.equals("bushy")){
+                parent = (i - 1) / 4;
+            }
+            else{
+                parent = i == 1 ? 0 : 1 + random.nextInt(i - 1);
+            }
+            addStick(matrices[random.nextInt(2)], i, parent);
+        }
+        if(shape.equals("random")){
+            for(int k = 0; k < size / 2; k++){
+                addStick(matrices[random.nextInt(2)], random.nextInt(size), 
+                        random.nextInt(size));
+            }
+        }
+        return matrices;
+    }
+    
+    /**
+     * Adds a stick to an adjacency matrix.
+     * @param matrix The matrix.
+     * @param i One end of the stick.
+     * @param j The other end.
+     */
+    private static void addStick(int[][] matrix, int i, int j){
+        matrix[i][j]++;
+        if(i != j){
+            matrix[j][i]++;
+        }
+    }
+    
+    /**
+     * Operation is one thing to measure.
+     */
+    private abstract static class Operation {
+        
+        /**
+         * Does the operation once.
+         * @return What it made, so that it is not optimized away.
+         */
+        abstract Object run();
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.hackenbushapp;
+
+import java.io.File;
+import java.io.IOException;
+import my.hackenbush.*;
+import my.hackenbushgenerator.*;
+
+/**
+ * GenerateWorkload makes random positions with a PositionGenerator and 
+ * either writes them to a file, as a PositionFile if its name ends in ".hkp"
+ * and as an EdgeListFile otherwise, or builds one into a Hackenbush, 
+ * printing how long that took and how many vertices and sticks it has.
+ * @author Madeleine Bulkow
+ */
+public class GenerateWorkload {
+    
+    /**
+     * @param args Optionally the shape (stalk, tree, multi_graph or 
+     * cyclic_graph), the number of components, the number of sticks, the 
+     * seed, the fraction of blue sticks, a file to write to and the number 
+     * of positions to write, in that order. Without a file one position is 
+     * built in memory.
+     */
+    public static void main(String[] args) throws IOException {
+        Shape shape = args.length > 0 
+                ? Shape.valueOf(args[0].toUpperCase()) : Shape.CYCLIC_GRAPH;
+        int components = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int sticks = args.length > 2 ? Integer.parseInt(args[2]) : 1000000;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 2018;
+        double blue = args.length > 4 ? Double.parseDouble(args[4]) : 0.5;
+        
+        PositionGenerator generator = new PositionGenerator(seed, blue);
+        long start = System.nanoTime();
+        if(args.length > 5){
+            int positions = args.length > 6 ? Integer.parseInt(args[6]) : 1;
+            if(args[5].endsWith(".hkp")){
+                try(PositionFileWriter file = 
+                        new PositionFileWriter(new File(args[5]))){
+                    for(int p = 0; p < positions; p++){
+                        generator.generate(shape, components, sticks, file);
+                    }
+                }
+            }
+            else{
+                try(EdgeListFile file = new EdgeListFile(new File(args[5]))){
+                    for(int p = 0; p < positions; p++){
+                        generator.generate(shape, components, sticks, file);
+                    }
+                }
+            }
+            System.out.println("wrote " + args[5] + " in " 
+                    + (System.nanoTime() - start) / 1000000 + " ms");
+        }
+        else{
+            Hackenbush position = generator.generate(shape, components, 
+                    sticks);
+            System.out.println("built " + position.getSize() 
+                    + " vertices, " + position.getEdgeTotal('r') + " red and "
+                    + position.getEdgeTotal('b') + " blue sticks in " 
+                    + (System.nanoTime() - start) / 1000000 + " ms");
+        }
+    }
+}
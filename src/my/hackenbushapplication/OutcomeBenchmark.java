@@ -0,0 +1,88 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.hackenbushapp;
+
+import my.combinatorialgame.GameValue;
+import my.combinatorialgame.Outcome;
+import my.hackenbush.*;
+import my.hackenbushgenerator.PositionGenerator;
+import my.hackenbushgenerator.Shape;
+
+/**
+ * OutcomeBenchmark finds the outcome class of random cyclic positions twice,
+ * once from the exact value found by a HackenbushSolver and once with an 
+ * OutcomeSolver, checks that the two agree, and prints the time each took 
+ * and how many positions the OutcomeSolver searched. The positions are single
+ * components made by a PositionGenerator.
+ * @author Madeleine Bulkow
+ */
+public class OutcomeBenchmark {
+    
+    /**
+     * @param args Optionally the number of positions and the number of 
+     * sticks in each, in that order.
+     */
+    public static void main(String[] args) {
+        int positions = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int sticks = args.length > 1 ? Integer.parseInt(args[1]) : 13;
+        
+        PositionGenerator generator = new PositionGenerator(2018, 0.5);
+        Hackenbush[] games = new Hackenbush[positions];
+        for(int p = 0; p < positions; p++){
+            games[p] = generator.generate(Shape.CYCLIC_GRAPH, 1, sticks);
+        }
+        
+        Outcome[] expected = new Outcome[positions];
+        long start = System.nanoTime();
+        for(int p = 0; p < positions; p++){
+            GameValue value = new HackenbushSolver().solve(games[p]);
+            expected[p] = Outcome.of(value);
+        }
+        long exactMillis = (System.nanoTime() - start) / 1000000;
+        System.out.println("exact values: " + exactMillis + " ms");
+        
+        long nodes = 0;
+        int[] counts = new int[Outcome.values().length];
+        start = System.nanoTime();
+        for(int p = 0; p < positions; p++){
+            OutcomeSolver solver = new OutcomeSolver();
+            Outcome outcome = solver.solve(games[p]);
+            if(outcome != expected[p]){
+                throw new IllegalStateException("Position " + p + " is " 
+                        + expected[p] + " but was found to be " + outcome);
+            }
+            counts[outcome.ordinal()]++;
+            nodes += solver.getNodesSearched();
+        }
+        long outcomeNanos = System.nanoTime() - start;
+        System.out.println("outcomes only: " + outcomeNanos / 1000000 
+                + " ms, " + nodes + " positions searched, " 
+                + (long) (nodes * 1e9 / Math.max(outcomeNanos, 1)) 
+                + " per second");
+        for(Outcome outcome: Outcome.values()){
+            System.out.println(outcome + ": " + counts[outcome.ordinal()]);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.hackenbushapp;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import my.combinatorialgame.GameValue;
+import my.hackenbush.*;
+
+/**
+ * ParallelTreeBenchmark values one large tree with a wide root, first with 
+ * the serial sweep of CompactHackentree and then in ForkJoinPools of 1, 2, 4,
+ * 8 and 16 threads, and prints the time and speedup of each along with 
+ * whether its value matched the serial one. Each pool also values the tree
+ * with one stem at the ground cut, and again after the stem is put back, to
+ * check that the parallel sweep leaves the tree ready for uncut. The time to
+ * build each tree is not counted.
+ * @author Madeleine Bulkow
+ */
+public class ParallelTreeBenchmark {
+    
+    /**
+     * @param args Optionally the number of vertices, the number of branches
+     * at the ground, the task threshold and the number of repetitions, in
+     * that order.
+     */
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int branches = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int threshold = args.length > 2 ? Integer.parseInt(args[2]) : 4096;
+        int repetitions = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        
+        Random random = new Random(2018);
+        SparseEdgeStore edges = new SparseEdgeStore(size);
+        for(int i = 1; i < size; i++){
+            int parent = i <= branches ? 0 
+                    : 1 + random.nextInt(Math.min(i - 1, 
+                            Math.max(branches, i / 2)));
+            edges.addEdges(random.nextBoolean() ? 'r' : 'b', parent, i, 1);
+        }
+        Hackenbush position = new Hackenbush(edges);
+        
+        GameValue expected = null;
+        long serial = Long.MAX_VALUE;
+        for(int r = 0; r < repetitions; r++){
+            CompactHackentree tree = new CompactHackentree(position);
+            long start = System.nanoTime();
+            expected = tree.getGameValue();
+            serial = Math.min(serial, System.nanoTime() - start);
+        }
+        System.out.println("serial: " + serial / 1000000 + " ms");
+        CompactHackentree cutTree = new CompactHackentree(position);
+        char stemColor = cutTree.getStemColor(1);
+        cutTree.cut(1);
+        GameValue cutExpected = cutTree.getGameValue();
+        
+        for(int threads: new int[]{1, 2, 4, 8, 16}){
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            long best = Long.MAX_VALUE;
+            boolean same = true;
+            for(int r = 0; r < repetitions; r++){
+                CompactHackentree tree = new CompactHackentree(position);
+                long start = System.nanoTime();
+                GameValue value = tree.getGameValue(pool, threshold);
+                best = Math.min(best, System.nanoTime() - start);
+                same &= value.equals(expected);
+            }
+            CompactHackentree tree = new CompactHackentree(position);
+            tree.cut(1);
+            same &= tree.getGameValue(pool, threshold).equals(cutExpected);
+            tree.uncut(1, 0, stemColor);
+            same &= tree.getGameValue().equals(expected);
+            pool.shutdown();
+            System.out.println(threads + " threads: " + best / 1000000 
+                    + " ms, speedup " 
+                    + String.format("%.2f", (double) serial / best)
+                    + (same ? "" : ", VALUE DIFFERS"));
+        }
+        System.out.println("available processors: " 
+                + Runtime.getRuntime().availableProcessors());
+    }
+}
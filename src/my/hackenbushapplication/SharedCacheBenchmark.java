@@ -0,0 +1,151 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.hackenbushapp;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import my.combinatorialgame.GameValue;
+import my.hackenbush.*;
+
+/**
+ * SharedCacheBenchmark has 1, 2, 4, 8 and 16 threads look up and store 
+ * random keys in a SharedValueCache at once, first with a single stripe, 
+ * which is no better than one lock around the whole cache, and then with 
+ * the default number of stripes. The value stored for each key is worked out
+ * from the key itself, so every value read back is checked, and any that 
+ * is not exactly what was stored is counted as torn. Lookups take no lock, 
+ * so this checks that a lookup racing a store never trusts what it read. It
+ * prints the lookups per second of each run, the speedup over one thread and
+ * the number of torn values, which should be 0.
+ * @author Madeleine Bulkow
+ */
+public class SharedCacheBenchmark {
+    
+    /**
+     * @param args Optionally the number of operations per thread, the number
+     * of distinct keys and the cache budget in megabytes, in that order.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        int keys = args.length > 1 ? Integer.parseInt(args[1]) : 1 << 18;
+        long budget = (args.length > 2 ? Long.parseLong(args[2]) : 16) << 20;
+        
+        Random random = new Random(2018);
+        long[] hashes = new long[keys];
+        long[] checks = new long[keys];
+        for(int k = 0; k < keys; k++){
+            hashes[k] = random.nextLong();
+            checks[k] = random.nextLong();
+        }
+        
+        int stripes = new SharedValueCache(budget).getStripeCount();
+        for(int s: new int[]{1, stripes}){
+            System.out.println(s + (s == 1 ? " stripe:" : " stripes:"));
+            double single = 0;
+            for(int threads: new int[]{1, 2, 4, 8, 16}){
+                SharedValueCache cache = new SharedValueCache(budget, s);
+                AtomicLong torn = new AtomicLong();
+                long nanos = run(cache, threads, operations, hashes, checks,
+                        torn);
+                double rate = (double) threads * operations * 1e9 / nanos;
+                if(threads == 1){
+                    single = rate;
+                }
+                System.out.println("  " + threads + " threads: " 
+                        + String.format("%.1f", rate / 1e6) 
+                        + " M operations/s, speedup " 
+                        + String.format("%.2f", rate / single) 
+                        + ", hit rate " 
+                        + String.format("%.2f", cache.getHitRate()) 
+                        + ", " + torn.get() + " torn values");
+            }
+        }
+        System.out.println("available processors: " 
+                + Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Runs a number of threads against a cache at once. Each looks up a 
+     * random key and stores its value if it is missing.
+     * @param cache The cache.
+     * @param threads The number of threads.
+     * @param operations The number of lookups each thread makes.
+     * @param hashes The hashes of the keys.
+     * @param checks The checks of the keys.
+     * @param torn Counts the values read back wrong.
+     * @return The nanoseconds from starting the threads to the last one 
+     * finishing.
+     */
+    private static long run(final SharedValueCache cache, int threads, 
+            final int operations, final long[] hashes, final long[] checks,
+            final AtomicLong torn) throws InterruptedException{
+        Thread[] workers = new Thread[threads];
+        for(int t = 0; t < threads; t++){
+            final long seed = t;
+            workers[t] = new Thread(){
+                @Override
+                public void run(){
+                    Random random = new Random(seed);
+                    long wrong = 0;
+                    for(int n = 0; n < operations; n++){
+                        int k = random.nextInt(hashes.length);
+                        GameValue value = cache.get(hashes[k], checks[k]);
+                        if(value == null){
+                            cache.put(hashes[k], checks[k], 
+                                    valueOf(hashes[k], checks[k]));
+                        }
+                        else if(!value.equals(valueOf(hashes[k], 
+                                checks[k]))){
+                            wrong++;
+                        }
+                    }
+                    torn.addAndGet(wrong);
+                }
+            };
+        }
+        long start = System.nanoTime();
+        for(Thread worker: workers){
+            worker.start();
+        }
+        for(Thread worker: workers){
+            worker.join();
+        }
+        return System.nanoTime() - start;
+    }
+    
+    /**
+     * Works out the value stored for a key: an odd numerator taken from the
+     * check, over a power of two taken from the hash, both small enough for
+     * the value to be cached.
+     * @param hash The hash of the key.
+     * @param check The check of the key.
+     * @return The value.
+     */
+    private static GameValue valueOf(long hash, long check){
+        return new GameValue(BigInteger.valueOf(check | 1), 
+                (int) (hash >>> 59));
+    }
+}
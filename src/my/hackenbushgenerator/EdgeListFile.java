@@ -0,0 +1,161 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.hackenbushgenerator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import my.hackenbush.Hackenbush;
+import my.hackenbush.SparseEdgeStore;
+
+/**
+ * EdgeListFile writes positions to a text file as they are made, and reads 
+ * them back into Hackenbush games. The first line of a position holds its 
+ * number of vertices, including the ground at vertex 0. Every other line 
+ * holds a group of sticks: 'r' or 'b' for their color, the vertices at their
+ * ends and their number, separated by spaces. A pair of vertices may appear 
+ * on several lines, whose sticks add. A file may hold several positions, 
+ * each written by one PositionGenerator.generate call and separated from the
+ * next by a blank line.
+ * @author Madeleine Bulkow
+ */
+public class EdgeListFile implements StickSink, Closeable {
+    
+    private final BufferedWriter writer;
+    private boolean started;
+    
+    /**
+     * Opens a file for writing, replacing anything already in it.
+     * @param path The file.
+     * @throws IOException If the file cannot be opened.
+     */
+    public EdgeListFile(File path) throws IOException{
+        writer = new BufferedWriter(new FileWriter(path));
+    }
+    
+    @Override
+    public void begin(int size) throws IOException{
+        if(started){
+            writer.newLine();
+        }
+        started = true;
+        writer.write(Integer.toString(size));
+        writer.newLine();
+    }
+    
+    @Override
+    public void addSticks(char color, int i, int j, int count) 
+            throws IOException{
+        writer.write(color + " " + i + " " + j + " " + count);
+        writer.newLine();
+    }
+    
+    @Override
+    public void close() throws IOException{
+        writer.close();
+    }
+    
+    /**
+     * Reads the first position in a file.
+     * @param path The file.
+     * @return A new Hackenbush.
+     * @throws IOException If the file cannot be read or does not start with
+     * a valid position.
+     */
+    public static Hackenbush read(File path) throws IOException{
+        try(BufferedReader reader = new BufferedReader(new FileReader(path))){
+            Hackenbush position = read(reader, path.toString());
+            if(position == null){
+                throw new IOException(path + " is empty.");
+            }
+            return position;
+        }
+        catch(IllegalArgumentException e){
+            throw new IOException(e.getMessage());
+        }
+    }
+    
+    /**
+     * Reads the next position from a stream. The whole position is read up 
+     * to the blank line or end of stream after it, even if it is not valid,
+     * so that the next call starts at the position after it.
+     * @param reader The stream.
+     * @param name The name of the stream, for messages.
+     * @return A new Hackenbush, or null if the stream has no more positions.
+     * @throws IOException If the stream cannot be read.
+     * @throws IllegalArgumentException If the position is not valid.
+     */
+    public static Hackenbush read(BufferedReader reader, String name) 
+            throws IOException{
+        String line = reader.readLine();
+        while(line != null && line.trim().isEmpty()){
+            line = reader.readLine();
+        }
+        if(line == null){
+            return null;
+        }
+        List<String> lines = new ArrayList<>();
+        while(line != null && !line.trim().isEmpty()){
+            lines.add(line.trim());
+            line = reader.readLine();
+        }
+        int number = 0;
+        try{
+            SparseEdgeStore edges = new SparseEdgeStore(
+                    Integer.parseInt(lines.get(0)));
+            for(number = 1; number < lines.size(); number++){
+                String[] fields = lines.get(number).split(" +");
+                if(fields.length != 4 || !(fields[0].equals("r") 
+                        || fields[0].equals("b"))){
+                    throw new IllegalArgumentException("Line " + (number + 1)
+                            + " of a position in " + name 
+                            + " is not a group of sticks.");
+                }
+                int i = Integer.parseInt(fields[1]);
+                int j = Integer.parseInt(fields[2]);
+                if(i < 0 || j < 0 || i >= edges.getSize() 
+                        || j >= edges.getSize()){
+                    throw new IllegalArgumentException("Line " + (number + 1)
+                            + " of a position in " + name 
+                            + " names a vertex out of range.");
+                }
+                edges.addEdges(fields[0].charAt(0), i, j, 
+                        Integer.parseInt(fields[3]));
+            }
+            return new Hackenbush(edges);
+        }
+        catch(NumberFormatException e){
+            throw new IllegalArgumentException("Line " + (number + 1) 
+                    + " of a position in " + name + " is not valid: " 
+                    + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.hackenbushgenerator;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import my.hackenbush.Hackenbush;
+import my.hackenbush.SparseEdgeStore;
+
+/**
+ * PositionFile reads positions from a binary file written by a 
+ * PositionFileWriter. The file is memory-mapped rather than read, and any 
+ * position can be decoded straight from the mapping by its index, so a file 
+ * of millions of positions opens at once and costs only the positions used.
+ * Positions may be read from several threads at once.
+ * 
+ * The file starts with a header of HEADER_BYTES bytes: the magic number 
+ * MAGIC, the format VERSION, four unused bytes, the number of positions and
+ * the offset of the index. The positions follow one after another, and the
+ * index holds the offset of each. Every number in the header and index is a
+ * big-endian long or int. A position is a run of varints, each a number in 
+ * seven-bit groups, lowest first, with the top bit of each byte set when 
+ * more follow: the number of vertices, then three for each group of sticks.
+ * Those are the change from the previous group's first vertex, the second 
+ * vertex less the first, both zigzag-encoded so that small negative numbers
+ * stay short, and the number of sticks times two, plus one if they are blue.
+ * A position ends where the next one, or the index, begins.
+ * @author Madeleine Bulkow
+ */
+public class PositionFile implements Closeable {
+    
+    /**
+     * The first eight bytes of every position file.
+     */
+    public static final long MAGIC = 0x484B4E42504F5331L;
+    
+    /**
+     * The version of the file format described above.
+     */
+    public static final int VERSION = 1;
+    
+    static final int HEADER_BYTES = 32;
+    private static final int COUNT_AT = 16;
+    private static final int INDEX_AT = 24;
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+    
+    private final RandomAccessFile file;
+    private final MappedByteBuffer[] segments;
+    private final int count;
+    private final long indexOffset;
+    
+    /**
+     * Opens a position file for reading.
+     * @param path The file.
+     * @throws IOException If the file cannot be opened or mapped, or is not a
+     * complete position file of this version.
+     */
+    public PositionFile(File path) throws IOException{
+        file = new RandomAccessFile(path, "r");
+        try{
+            long length = file.length();
+            if(length < HEADER_BYTES || file.readLong() != MAGIC){
+                throw new IOException(path + " is not a position file.");
+            }
+            int version = file.readInt();
+            if(version != VERSION){
+                throw new IOException(path + " has format version " 
+                        + version + ", not " + VERSION + ".");
+            }
+            file.seek(COUNT_AT);
+            long positions = file.readLong();
+            file.seek(INDEX_AT);
+            indexOffset = file.readLong();
+            if(positions < 0 || positions > Integer.MAX_VALUE 
+                    || indexOffset < HEADER_BYTES 
+                    || indexOffset + positions * 8 != length){
+                throw new IOException(path + " is truncated or was not "
+                        + "closed.");
+            }
+            count = (int) positions;
+            segments = new MappedByteBuffer[
+                    (int) ((length + SEGMENT_MASK) >>> SEGMENT_BITS)];
+            for(int s = 0; s < segments.length; s++){
+                long start = (long) s << SEGMENT_BITS;
+                segments[s] = file.getChannel().map(
+                        FileChannel.MapMode.READ_ONLY, start, 
+                        Math.min(SEGMENT_MASK + 1, length - start));
+            }
+        }
+        catch(IOException | RuntimeException e){
+            file.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Returns whether a file starts with the magic number of a position file.
+     * @param path The file.
+     * @return True if it does.
+     * @throws IOException If the file cannot be read.
+     */
+    public static boolean isPositionFile(File path) throws IOException{
+        try(RandomAccessFile candidate = new RandomAccessFile(path, "r")){
+            return candidate.length() >= HEADER_BYTES 
+                    && candidate.readLong() == MAGIC;
+        }
+    }
+    
+    /**
+     * Returns the number of positions in the file.
+     * @return A nonnegative integer.
+     */
+    public int getPositionCount(){
+        return count;
+    }
+    
+    /**
+     * Decodes one position.
+     * @param index The index of the position, from 0.
+     * @return A new Hackenbush.
+     * @throws IOException If the position is not validly encoded.
+     */
+    public Hackenbush get(int index) throws IOException{
+        if(index < 0 || index >= count){
+            throw new IndexOutOfBoundsException("No position " + index + ".");
+        }
+        long start = longAt(indexOffset + 8L * index);
+        long end = index + 1 < count ? longAt(indexOffset + 8L * index + 8) 
+                : indexOffset;
+        if(start < HEADER_BYTES || start >= end || end > indexOffset){
+            throw new IOException("The index entry of position " + index 
+                    + " is not valid.");
+        }
+        long[] at = {start};
+        long size = varintAt(at, end);
+        if(size > Integer.MAX_VALUE){
+            throw new IOException("Position " + index + " is too large.");
+        }
+        SparseEdgeStore edges = new SparseEdgeStore((int) size);
+        long i = 0;
+        while(at[0] < end){
+            i += unzigzag(varintAt(at, end));
+            long j = i + unzigzag(varintAt(at, end));
+            long sticks = varintAt(at, end);
+            if(i < 0 || j < 0 || i >= size || j >= size || sticks >>> 1 < 1
+                    || sticks >>> 1 > Integer.MAX_VALUE){
+                throw new IOException("Position " + index 
+                        + " has a group of sticks that is not valid.");
+            }
+            edges.addEdges((sticks & 1) == 1 ? 'b' : 'r', (int) i, (int) j, 
+                    (int) (sticks >>> 1));
+        }
+        return new Hackenbush(edges);
+    }
+    
+    @Override
+    public void close() throws IOException{
+        file.close();
+    }
+    
+    /**
+     * Maps a number to a nonnegative one, keeping small numbers of either 
+     * sign small.
+     * @param value A number.
+     * @return 2 * value for nonnegative values, -2 * value - 1 otherwise.
+     */
+    static long zigzag(long value){
+        return (value << 1) ^ (value >> 63);
+    }
+    
+    /**
+     * Undoes zigzag.
+     * @param value A zigzag-encoded number.
+     * @return The original number.
+     */
+    static long unzigzag(long value){
+        return (value >>> 1) ^ -(value & 1);
+    }
+    
+    /**
+     * Reads a varint.
+     * @param at A one-element array holding the offset to read from, moved 
+     * past the varint.
+     * @param end The offset the varint must end before.
+     * @return The number.
+     * @throws IOException If the varint runs past the end or is too long.
+     */
+    private long varintAt(long[] at, long end) throws IOException{
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7){
+            if(at[0] >= end){
+                throw new IOException("A varint runs past its position.");
+            }
+            byte b = byteAt(at[0]++);
+            value |= (long) (b & 0x7F) << shift;
+            if(b >= 0){
+                return value;
+            }
+        }
+        throw new IOException("A varint is too long.");
+    }
+    
+    /**
+     * Reads one byte of the file.
+     * @param offset The offset of the byte.
+     * @return The byte.
+     */
+    private byte byteAt(long offset){
+        return segments[(int) (offset >>> SEGMENT_BITS)]
+                .get((int) (offset & SEGMENT_MASK));
+    }
+    
+    /**
+     * Reads a big-endian long from the file.
+     * @param offset The offset of its first byte.
+     * @return The long.
+     */
+    private long longAt(long offset){
+        int within = (int) (offset & SEGMENT_MASK);
+        MappedByteBuffer segment = segments[(int) (offset >>> SEGMENT_BITS)];
+        if(within + 8 <= segment.limit()){
+            return segment.getLong(within);
+        }
+        long value = 0;
+        for(int k = 0; k < 8; k++){
+            value = value << 8 | (byteAt(offset + k) & 0xFF);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.hackenbushgenerator;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import my.hackenbush.Hackenbush;
+
+/**
+ * PositionFileWriter writes positions to a binary file in the format 
+ * described by PositionFile, either as a PositionGenerator makes them or from
+ * existing Hackenbush games. Sticks are encoded as they arrive and only the 
+ * offset of each position is kept in memory. The index and the header are 
+ * written by close, and a file that was not closed cannot be read.
+ * @author Madeleine Bulkow
+ */
+public class PositionFileWriter implements StickSink, Closeable {
+    
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    private long written = PositionFile.HEADER_BYTES;
+    private long[] offsets = new long[1024];
+    private int count;
+    private int size;
+    private int previous;
+    
+    /**
+     * Opens a file for writing, replacing anything already in it.
+     * @param path The file.
+     * @throws IOException If the file cannot be opened.
+     */
+    public PositionFileWriter(File path) throws IOException{
+        file = new RandomAccessFile(path, "rw");
+        file.setLength(0);
+        channel = file.getChannel();
+        channel.position(PositionFile.HEADER_BYTES);
+    }
+    
+    /**
+     * Writes a whole position.
+     * @param position A Hackenbush game.
+     * @throws IOException If the file cannot be written to.
+     */
+    public void write(Hackenbush position) throws IOException{
+        begin(position.getSize());
+        for(int i = 0; i < position.getSize(); i++){
+            int degree = position.getDegree(i);
+            for(int slot = 0; slot < degree; slot++){
+                int j = position.getNeighbor(i, slot);
+                if(j < i){
+                    continue;
+                }
+                for(char color: new char[]{'r', 'b'}){
+                    int sticks = position.getEdgeCountAt(color, i, slot);
+                    if(sticks > 0){
+                        addSticks(color, i, j, sticks);
+                    }
+                }
+            }
+        }
+    }
+    
+    @Override
+    public void begin(int size) throws IOException{
+        if(size < 0){
+            throw new IllegalArgumentException("Size must be nonnegative.");
+        }
+        if(count == Integer.MAX_VALUE){
+            throw new IOException("Too many positions for one file.");
+        }
+        if(count == offsets.length){
+            offsets = Arrays.copyOf(offsets, count * 2);
+        }
+        offsets[count++] = written + buffer.position();
+        this.size = size;
+        previous = 0;
+        putVarint(size);
+    }
+    
+    @Override
+    public void addSticks(char color, int i, int j, int count) 
+            throws IOException{
+        if(this.count == 0){
+            throw new IllegalStateException("No position has been begun.");
+        }
+        if(i < 0 || j < 0 || i >= size || j >= size || count < 1 
+                || (color != 'r' && color != 'b')){
+            throw new IllegalArgumentException("Not a valid group of sticks.");
+        }
+        putVarint(PositionFile.zigzag(i - previous));
+        putVarint(PositionFile.zigzag(j - i));
+        putVarint((long) count << 1 | (color == 'b' ? 1 : 0));
+        previous = i;
+    }
+    
+    /**
+     * Returns the number of positions written so far.
+     * @return A nonnegative integer.
+     */
+    public int getPositionCount(){
+        return count;
+    }
+    
+    @Override
+    public void close() throws IOException{
+        try{
+            long indexOffset = written + buffer.position();
+            for(int k = 0; k < count; k++){
+                if(buffer.remaining() < 8){
+                    flush();
+                }
+                buffer.putLong(offsets[k]);
+            }
+            flush();
+            ByteBuffer header = ByteBuffer.allocate(PositionFile.HEADER_BYTES);
+            header.putLong(PositionFile.MAGIC);
+            header.putInt(PositionFile.VERSION);
+            header.putInt(0);
+            header.putLong(count);
+            header.putLong(indexOffset);
+            header.flip();
+            channel.write(header, 0);
+        }
+        finally{
+            file.close();
+        }
+    }
+    
+    /**
+     * Writes a nonnegative number in seven-bit groups, lowest first, with the
+     * top bit of each byte set when more follow.
+     * @param value A nonnegative number.
+     * @throws IOException If the file cannot be written to.
+     */
+    private void putVarint(long value) throws IOException{
+        if(buffer.remaining() < 10){
+            flush();
+        }
+        while((value & ~0x7FL) != 0){
+            buffer.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+    
+    /**
+     * Writes out everything in the buffer.
+     * @throws IOException If the file cannot be written to.
+     */
+    private void flush() throws IOException{
+        buffer.flip();
+        while(buffer.hasRemaining()){
+            written += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
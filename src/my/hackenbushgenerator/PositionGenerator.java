@@ -0,0 +1,217 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.hackenbushgenerator;
+
+import java.io.IOException;
+import java.util.Random;
+import my.hackenbush.Hackenbush;
+import my.hackenbush.SparseEdgeStore;
+
+/**
+ * PositionGenerator makes random Hackenbush positions of a chosen Shape and 
+ * number of sticks, as sums of any number of components that meet only at 
+ * the ground. The same seed always gives the same positions. Each stick is 
+ * blue with a fixed probability, and red otherwise.
+ * 
+ * Sticks are handed to a StickSink as they are made, and the generator itself
+ * keeps nothing but its random source, so positions with millions of sticks 
+ * can be written straight to an EdgeListFile, or built into a Hackenbush 
+ * through a SparseEdgeStore, without any adjacency matrix.
+ * @author Madeleine Bulkow
+ */
+public class PositionGenerator {
+    
+    private final Random random;
+    private final double blueFraction;
+    
+    /**
+     * Constructor
+     * 
+     * @param seed The seed of the random source.
+     * @param blueFraction The probability of each stick being blue, from 0 
+     * to 1.
+     */
+    public PositionGenerator(long seed, double blueFraction){
+        if(!(blueFraction >= 0 && blueFraction <= 1)){
+            throw new IllegalArgumentException(
+                    "Blue fraction must be between 0 and 1.");
+        }
+        random = new Random(seed);
+        this.blueFraction = blueFraction;
+    }
+    
+    /**
+     * Makes a position and builds it into a Hackenbush.
+     * @param shape The shape of every component.
+     * @param components The number of components, at least 1.
+     * @param sticks The total number of sticks, shared as evenly as possible
+     * among the components.
+     * @return A new Hackenbush.
+     */
+    public Hackenbush generate(Shape shape, int components, int sticks){
+        final SparseEdgeStore[] store = new SparseEdgeStore[1];
+        try{
+            generate(shape, components, sticks, new StickSink(){
+                @Override
+                public void begin(int size){
+                    store[0] = new SparseEdgeStore(size);
+                }
+                
+                @Override
+                public void addSticks(char color, int i, int j, int count){
+                    store[0].addEdges(color, i, j, count);
+                }
+            });
+        }
+        catch(IOException e){
+            throw new IllegalStateException(e);
+        }
+        return new Hackenbush(store[0]);
+    }
+    
+    /**
+     * Makes a position and hands its sticks to a sink.
+     * @param shape The shape of every component.
+     * @param components The number of components, at least 1.
+     * @param sticks The total number of sticks, shared as evenly as possible
+     * among the components.
+     * @param sink The sink to hand the sticks to.
+     * @throws IOException If the sink cannot be written to.
+     */
+    public void generate(Shape shape, int components, int sticks, 
+            StickSink sink) throws IOException{
+        if(components < 1 || sticks < 0){
+            throw new IllegalArgumentException(
+                    "Unsupported number of components or sticks.");
+        }
+        long size = 1;
+        for(int c = 0; c < components; c++){
+            size += vertices(shape, share(sticks, components, c));
+        }
+        if(size > Integer.MAX_VALUE){
+            throw new IllegalArgumentException("Too many vertices.");
+        }
+        sink.begin((int) size);
+        int base = 0;
+        for(int c = 0; c < components; c++){
+            int share = share(sticks, components, c);
+            component(shape, base, vertices(shape, share), share, sink);
+            base += vertices(shape, share);
+        }
+    }
+    
+    /**
+     * Makes one component, numbering its vertices after a given base.
+     * @param shape The shape of the component.
+     * @param base The number of vertices before the component's, not 
+     * counting the ground.
+     * @param vertices The number of vertices in the component.
+     * @param sticks The number of sticks in the component.
+     * @param sink The sink to hand the sticks to.
+     * @throws IOException If the sink cannot be written to.
+     */
+    private void component(Shape shape, int base, int vertices, int sticks, 
+            StickSink sink) throws IOException{
+        int extra = sticks - vertices;
+        for(int k = 1; k <= vertices; k++){
+            int parent;
+            if(k == 1){
+                parent = 0;
+            }
+            else if(shape == Shape.STALK){
+                parent = base + k - 1;
+            }
+            else{
+                parent = base + 1 + random.nextInt(k - 1);
+            }
+            int count = 1;
+            if(shape == Shape.MULTI_GRAPH && extra > 0){
+                int more = k == vertices ? extra 
+                        : Math.min(extra, random.nextInt(
+                                2 * extra / (vertices - k + 1) + 1));
+                count += more;
+                extra -= more;
+            }
+            addSticks(base + k, parent, count, sink);
+        }
+        for(; extra > 0; extra--){
+            int i = random.nextInt(vertices + 1);
+            int j = random.nextInt(vertices + 1);
+            addSticks(i == 0 ? 0 : base + i, j == 0 ? 0 : base + j, 1, sink);
+        }
+    }
+    
+    /**
+     * Colors a number of sticks between two vertices and hands them to a sink.
+     * @param i One end of the sticks.
+     * @param j The other end.
+     * @param count The number of sticks.
+     * @param sink The sink to hand the sticks to.
+     * @throws IOException If the sink cannot be written to.
+     */
+    private void addSticks(int i, int j, int count, StickSink sink) 
+            throws IOException{
+        int blue = 0;
+        for(int k = 0; k < count; k++){
+            if(random.nextDouble() < blueFraction){
+                blue++;
+            }
+        }
+        if(blue > 0){
+            sink.addSticks('b', i, j, blue);
+        }
+        if(blue < count){
+            sink.addSticks('r', i, j, count - blue);
+        }
+    }
+    
+    /**
+     * Finds the number of sticks given to one component.
+     * @param sticks The total number of sticks.
+     * @param components The number of components.
+     * @param c The index of the component.
+     * @return A nonnegative integer.
+     */
+    private static int share(int sticks, int components, int c){
+        return sticks / components + (c < sticks % components ? 1 : 0);
+    }
+    
+    /**
+     * Finds the number of vertices in a component, not counting the ground.
+     * @param shape The shape of the component.
+     * @param sticks The number of sticks in the component.
+     * @return A nonnegative integer no greater than sticks.
+     */
+    private static int vertices(Shape shape, int sticks){
+        switch(shape){
+            case MULTI_GRAPH:
+                return (sticks + 1) / 2;
+            case CYCLIC_GRAPH:
+                return sticks == 0 ? 0 : Math.max(1, sticks * 2 / 3);
+            default:
+                return sticks;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.hackenbushgenerator;
+
+/**
+ * Shape lists the kinds of component a PositionGenerator can make.
+ * @author Madeleine Bulkow
+ */
+public enum Shape {
+    
+    /**
+     * A single chain of sticks standing on the ground.
+     */
+    STALK,
+    
+    /**
+     * A random tree, in which each vertex hangs from a vertex chosen at 
+     * random among those made before it.
+     */
+    TREE,
+    
+    /**
+     * A random tree over half as many vertices as sticks, in which the 
+     * sticks left over are added alongside the sticks of the tree.
+     */
+    MULTI_GRAPH,
+    
+    /**
+     * A random tree over two thirds as many vertices as sticks, in which the
+     * sticks left over join vertices chosen at random, closing cycles.
+     */
+    CYCLIC_GRAPH
+}
@@ -0,0 +1,54 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Madeleine Bulkow.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package my.hackenbushgenerator;
+
+import java.io.IOException;
+
+/**
+ * StickSink receives the sticks of a position one group at a time as a 
+ * PositionGenerator makes them, so that a position need never be held in 
+ * full by the generator.
+ * @author Madeleine Bulkow
+ */
+public interface StickSink {
+    
+    /**
+     * Starts a new position. It is called once, before any sticks are added.
+     * @param size The number of vertices, including the ground at vertex 0.
+     * @throws IOException If the sink cannot be written to.
+     */
+    void begin(int size) throws IOException;
+    
+    /**
+     * Adds sticks of one color between two vertices. The same pair may be 
+     * given more than once.
+     * @param color 'r' for red or 'b' for blue.
+     * @param i One end of the sticks.
+     * @param j The other end, which may be i for loops.
+     * @param count A positive number of sticks.
+     * @throws IOException If the sink cannot be written to.
+     */
+    void addSticks(char color, int i, int j, int count) throws IOException;
+}
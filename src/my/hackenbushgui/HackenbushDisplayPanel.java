@@ -123,14 +123,13 @@ public class HackenbushDisplayPanel extends JPanel{
         // Draw the ground.
         g.drawLine(0, height, width, height);
         
-        int[][] redEdges = hackenbush.getEdges('r');
-        int[][] blueEdges = hackenbush.getEdges('b');
-        
         for(int i = 0; i<hackenbush.getSize(); i++){
-            for(int j = i; j<hackenbush.getSize(); j++){
-                int redIJEdges = redEdges[i][j];
-                int blueIJEdges = blueEdges[i][j];
-                if(redIJEdges + blueIJEdges > 0){
+            int degree = hackenbush.getDegree(i);
+            for(int slot = 0; slot<degree; slot++){
+                int j = hackenbush.getNeighbor(i, slot);
+                int redIJEdges = hackenbush.getEdgeCountAt('r', i, slot);
+                int blueIJEdges = hackenbush.getEdgeCountAt('b', i, slot);
+                if(j >= i && redIJEdges + blueIJEdges > 0){
                     int xCoordStart = nodeCoords[i][0];
                     int yCoordStart = nodeCoords[i][1];
                     // Draw any loops.
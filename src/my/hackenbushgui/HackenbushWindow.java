@@ -24,12 +24,18 @@
 
 package my.hackenbushgui;
 
+import my.combinatorialgame.GameValue;
+import my.hackenbush.ComponentSum;
+import my.hackenbush.HackenbushSolver;
 import my.hackenbush.Hackentree;
-import my.hackenbush.Hackenbush;
+import my.hackenbush.HeightLayers;
+import my.hackenbush.SharedValueCache;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.Collections;
 import java.util.LinkedList;
+import java.util.concurrent.ForkJoinPool;
 import javax.swing.BorderFactory;
 import javax.swing.JFrame;
 import javax.swing.JComboBox;
@@ -50,7 +56,8 @@ public class HackenbushWindow implements ActionListener{
     private final int width;
     private final int height;
     private final int border = 20;
-    private Hackenbush bush;
+    private Hackentree bush;
+    private ComponentSum components;
     private HackenbushDisplayPanel hackenbushDisplay;
 
     int size = 3;
@@ -65,6 +72,9 @@ public class HackenbushWindow implements ActionListener{
     private JComboBox edgeStart;
     private JComboBox edgeEnd;
     private Button move;
+    private final int maxSolvedSticks = 24;
+    private final SharedValueCache cache = 
+            new SharedValueCache(HackenbushSolver.DEFAULT_CACHE_BYTES);
     
     /**
      * Constructor
@@ -107,7 +117,9 @@ public class HackenbushWindow implements ActionListener{
      * messages.
      */
     private void design(){
-        bush = new Hackenbush(size, redEdges, blueEdges);
+        bush = new Hackentree(size, redEdges, blueEdges);
+        components = new ComponentSum(bush, maxSolvedSticks, 
+                ForkJoinPool.commonPool(), cache);
         hackenbushDisplay = new HackenbushDisplayPanel(
                 bush, width/2, height - 2 * border);    
         hackenbushDisplay.setBorder(
@@ -227,7 +239,8 @@ public class HackenbushWindow implements ActionListener{
     }
     
     /**
-     * Given a color, finds all nodes at which that color can move.
+     * Given a color, finds all nodes at which that color can move, listed from
+     * the ground upwards.
      * @param color A character representing the current color; 'r' for red or 
      * 'b' for blue.
      * @return An array of available nodes (represented by Integers between 0 
@@ -235,11 +248,13 @@ public class HackenbushWindow implements ActionListener{
      */
     private Integer[] availableMoves(char color){
         LinkedList<Integer> availableMoves = new LinkedList<>();
-        int[][] edges = bush.getEdges(color);
-        for(int i = 0; i < size; i++){
-            for(int j = 0; j < size; j++){
-                if(edges[i][j] > 0){
-                    availableMoves.add(i);
+        HeightLayers layers = bush.getLayers();
+        for(int k = 0; k < layers.getNodeCount(); k++){
+            int node = layers.getNodeInOrder(k);
+            int degree = bush.getDegree(node);
+            for(int slot = 0; slot < degree; slot++){
+                if(bush.getEdgeCountAt(color, node, slot) > 0){
+                    availableMoves.add(node);
                     break;
                 }
             }
@@ -256,12 +271,13 @@ public class HackenbushWindow implements ActionListener{
      */
     private Integer[] availableMovesAtNode(char color, int node){
         LinkedList<Integer> availableMoves = new LinkedList<>();
-        int[][] edges = bush.getEdges(color);
-        for(int i = 0; i < size; i++){
-            if(edges[node][i]>0){
-                availableMoves.add(i);
+        int degree = bush.getDegree(node);
+        for(int slot = 0; slot < degree; slot++){
+            if(bush.getEdgeCountAt(color, node, slot) > 0){
+                availableMoves.add(bush.getNeighbor(node, slot));
             }
         }
+        Collections.sort(availableMoves);
         return availableMoves.toArray(new Integer[availableMoves.size()]);
     }
     
@@ -277,7 +293,9 @@ public class HackenbushWindow implements ActionListener{
             messages.setText("Matrices must be the same size.");
         }
         else{
-            bush = new Hackenbush(size, redEdges, blueEdges);
+            bush = new Hackentree(size, redEdges, blueEdges);
+            components = new ComponentSum(bush, maxSolvedSticks, 
+                    ForkJoinPool.commonPool(), cache);
             hackenbushDisplay.hackenbush = bush;
         }
     }
@@ -323,23 +341,27 @@ public class HackenbushWindow implements ActionListener{
         char color  = stringToColor((String) moveColor.getSelectedItem());
         int start = (int) edgeStart.getSelectedItem();
         int end = (int) edgeEnd.getSelectedItem();
-        String moveMessage = bush.move(color, start, end);
+        String moveMessage = components.move(color, start, end);
         messages.setText(messages.getText() + "\n" + moveMessage);
         updateGUI();
     }
     
     /**
      * Prints information about the current state of the game, including the 
-     * game's current value if the current graph is a rooted tree.
+     * game's current value if the current graph is a rooted tree or each of
+     * its components is a tree or small enough to search.
      */
     private void printState(){
-        if(bush.isTree()){
-            Hackentree hackentree = new Hackentree(bush);
-            String gameState = hackentree.gameState('r');
+        if(bush.isTree){
+            String gameState = bush.gameState('r');
             messages.setText(messages.getText() + "\n" + gameState);
         }
         else{
             String gameState = bush.gameState('r');
+            GameValue value = bush.isWon() ? null : components.getGameValue();
+            if(value != null){
+                gameState = "Current game value is " + value.printValue();
+            }
             messages.setText(messages.getText() + "\n" + gameState);
         }
     }    